@@ -0,0 +1,363 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.print.Doc;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.PrintService;
+import javax.print.SimpleDoc;
+
+/**
+ * Sends many receipts to one print service as a single print job.
+ * <p>
+ * Each <code>PrinterOutputStream</code> creates one print job, and the spooler
+ * setup of each job can take more than the printing of a small receipt. This
+ * class collects the receipts and sends them together, in submission order,
+ * when the batch reaches the maximum number of receipts or bytes, or when the
+ * oldest receipt waited the linger time. Each receipt has its own
+ * completion; when the print job fails, all receipts of the batch fail.
+ * <pre>
+ * BatchingPrintService batching = new BatchingPrintService(printService);
+ * BatchingPrintService.ReceiptOutputStream receipt = batching.openReceipt();
+ * EscPosPrinter printer = new EscPosPrinter(receipt);
+ * printer.writeLF("Hello world");
+ * printer.close(); // queues the receipt
+ * receipt.getCompletion().join();
+ * </pre>
+ */
+public class BatchingPrintService implements Closeable, Flushable {
+
+    /**
+     * Receipt being composed by one thread, queued on <code>close()</code>.
+     * Writes after <code>close()</code> throw <code>IOException</code>.
+     */
+    public static class ReceiptOutputStream extends OutputStream implements CompletionAware {
+
+        private final BatchingPrintService owner;
+        private final long createdNanos = System.nanoTime();
+        private final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+        private boolean closed;
+
+        ReceiptOutputStream(BatchingPrintService owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            ensureOpen();
+            data.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            data.write(b, off, len);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+        }
+
+        /**
+         * Gets the completion of the receipt, when the print job of its batch
+         * is accepted by the print service.
+         *
+         * @return completion of the receipt
+         */
+        @Override
+        public CompletableFuture<JobResult> getCompletion() {
+            return completion;
+        }
+
+        /**
+         * Queues the receipt to be sent with the next batch.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            owner.enqueue(new Pending(data.toByteArray(), createdNanos, completion));
+        }
+    }
+
+    private static final class Pending {
+        final byte[] data;
+        final long createdNanos;
+        final long submittedNanos = System.nanoTime();
+        final CompletableFuture<JobResult> completion;
+
+        Pending(byte[] data, long createdNanos, CompletableFuture<JobResult> completion) {
+            this.data = data;
+            this.createdNanos = createdNanos;
+            this.completion = completion;
+        }
+    }
+
+    private final PrintService printService;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private final Thread thread;
+    private long queuedBytes;
+    private boolean flushRequested;
+    private boolean closed;
+    private volatile int maxReceipts = 16;
+    private volatile int maxBytes = 64 * 1024;
+    private volatile long lingerMillis = 50;
+    private long batches;
+
+    /**
+     * creates one instance of BatchingPrintService.
+     *
+     * @param printService the printer that receives the batches
+     * @see PrinterOutputStream#getPrintServiceByName(java.lang.String)
+     */
+    public BatchingPrintService(PrintService printService) {
+        this.printService = printService;
+        thread = new Thread(this::run, "BatchingPrintService-" + printService.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets maximum number of receipts of one batch. Default is 16.
+     *
+     * @param maxReceipts number of receipts
+     * @return this object
+     */
+    public BatchingPrintService setMaxReceipts(int maxReceipts) {
+        this.maxReceipts = maxReceipts;
+        return this;
+    }
+
+    /**
+     * Sets maximum size of one batch. One receipt bigger than that is sent
+     * alone. Default is 65536.
+     *
+     * @param maxBytes size in bytes
+     * @return this object
+     */
+    public BatchingPrintService setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Sets how long the oldest receipt waits for others before the batch is
+     * sent. Default is 50.
+     *
+     * @param lingerMillis time in milliseconds
+     * @return this object
+     */
+    public BatchingPrintService setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+        return this;
+    }
+
+    /**
+     * Creates one receipt to be composed by the calling thread.
+     *
+     * @return new receipt
+     */
+    public ReceiptOutputStream openReceipt() {
+        return new ReceiptOutputStream(this);
+    }
+
+    /**
+     * Queues one receipt.
+     *
+     * @param data the receipt bytes, must not be changed after the
+     * submission
+     * @return completion of the receipt
+     */
+    public CompletableFuture<JobResult> submit(byte[] data) {
+        CompletableFuture<JobResult> completion = new CompletableFuture<>();
+        enqueue(new Pending(data, System.nanoTime(), completion));
+        return completion;
+    }
+
+    private void enqueue(Pending pending) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("batching print service is closed");
+            }
+            queue.offer(pending);
+            queuedBytes += pending.data.length;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the queued receipts without waiting the linger time.
+     */
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            flushRequested = true;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets number of print jobs created.
+     *
+     * @return actual value
+     */
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Pending> batch;
+            lock.lock();
+            try {
+                while (true) {
+                    if (queue.isEmpty()) {
+                        flushRequested = false;
+                        if (closed) {
+                            return;
+                        }
+                        workAvailable.await();
+                        continue;
+                    }
+                    if (closed || flushRequested || queue.size() >= maxReceipts || queuedBytes >= maxBytes) {
+                        break;
+                    }
+                    long wait = queue.peek().submittedNanos + TimeUnit.MILLISECONDS.toNanos(lingerMillis)
+                            - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    workAvailable.awaitNanos(wait);
+                }
+                batch = takeBatch();
+                batches++;
+            } catch (InterruptedException ex) {
+                failQueued(new InterruptedIOException("batching thread interrupted"));
+                return;
+            } finally {
+                lock.unlock();
+            }
+            print(batch);
+        }
+    }
+
+    /**
+     * Takes the receipts of the next batch, must be called holding the lock.
+     */
+    private List<Pending> takeBatch() {
+        List<Pending> batch = new ArrayList<>();
+        int bytes = 0;
+        while (!queue.isEmpty() && batch.size() < maxReceipts) {
+            Pending next = queue.peek();
+            if (!batch.isEmpty() && bytes + next.data.length > maxBytes) {
+                break;
+            }
+            queue.poll();
+            queuedBytes -= next.data.length;
+            bytes += next.data.length;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void failQueued(IOException cause) {
+        lock.lock();
+        try {
+            closed = true;
+            for (Pending pending : queue) {
+                pending.completion.completeExceptionally(cause);
+            }
+            queue.clear();
+            queuedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void print(List<Pending> batch) {
+        int size = 0;
+        for (Pending pending : batch) {
+            size += pending.data.length;
+        }
+        byte[] data = new byte[size];
+        int position = 0;
+        for (Pending pending : batch) {
+            System.arraycopy(pending.data, 0, data, position, pending.data.length);
+            position += pending.data.length;
+        }
+        try {
+            Doc doc = new SimpleDoc(data, DocFlavor.BYTE_ARRAY.AUTOSENSE, null);
+            DocPrintJob job = printService.createPrintJob();
+            job.print(doc, null);
+            long completedNanos = System.nanoTime();
+            for (Pending pending : batch) {
+                pending.completion.complete(new JobResult(pending.data.length,
+                        pending.createdNanos, pending.submittedNanos, completedNanos));
+            }
+        } catch (PrintException | RuntimeException ex) {
+            IOException cause = new IOException("print job of " + batch.size() + " receipts failed", ex);
+            for (Pending pending : batch) {
+                pending.completion.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting receipts, sends the queued ones and waits the last
+     * print job.
+     *
+     * @exception IOException if interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing the batching print service");
+        }
+    }
+
+}
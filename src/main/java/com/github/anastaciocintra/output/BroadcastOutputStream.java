@@ -0,0 +1,241 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the same job to many printers.
+ * <p>
+ * The job is composed once, with one printer instance over this stream, and
+ * on <code>close()</code> the same bytes are written concurrently on the
+ * output stream of each destination. The bytes are shared by all
+ * destinations without copies, so the stream cannot be written after it is
+ * closed. Each destination has its own completion; one printer offline does
+ * not stop the others.
+ * <pre>
+ * BroadcastOutputStream broadcast = new BroadcastOutputStream();
+ * broadcast.addDestination("kitchen", () -&gt; new TcpIpOutputStream("10.0.0.5"));
+ * broadcast.addDestination("bar", () -&gt; new TcpIpOutputStream("10.0.0.6"));
+ * EscPosPrinter printer = new EscPosPrinter(broadcast);
+ * printer.writeLF("Order 42");
+ * printer.close(); // sends the job to all destinations
+ * </pre>
+ */
+public class BroadcastOutputStream extends ByteArrayOutputStream {
+
+    private static final class Destination {
+        final String name;
+        final OutputStreamFactory factory;
+        final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+
+        Destination(String name, OutputStreamFactory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    private final Executor executor;
+    private final Map<String, Destination> destinations = new LinkedHashMap<>();
+    private final long createdNanos = System.nanoTime();
+    private long closedNanos;
+    private long deliveryTimeoutMillis = 60000;
+    private boolean closed;
+
+    /**
+     * creates one instance of BroadcastOutputStream.
+     *
+     * @param executor runs the delivery to each destination
+     */
+    public BroadcastOutputStream(Executor executor) {
+        super(4096);
+        this.executor = executor;
+    }
+
+    /**
+     * creates one instance of BroadcastOutputStream that starts one thread
+     * per destination.
+     */
+    public BroadcastOutputStream() {
+        this(null);
+    }
+
+    /**
+     * Adds one destination, must be called before the stream is closed.
+     *
+     * @param name name of the destination, used on results
+     * @param factory opens the output stream of the printer when the job is
+     * sent
+     * @return completion of the job on this destination
+     */
+    public synchronized CompletableFuture<JobResult> addDestination(String name, OutputStreamFactory factory) {
+        checkOpen();
+        if (destinations.containsKey(name)) {
+            throw new IllegalArgumentException("destination " + name + " is already registered");
+        }
+        Destination destination = new Destination(name, factory);
+        destinations.put(name, destination);
+        return destination.completion;
+    }
+
+    /**
+     * Sets how long each destination waits for the delivery of the job when
+     * its stream is <code>CompletionAware</code>, like
+     * <code>TcpIpOutputStream</code> or one <code>PacedOutputStream</code>
+     * over it. Default is 60000.
+     *
+     * @param deliveryTimeoutMillis time in milliseconds
+     */
+    public synchronized void setDeliveryTimeoutMillis(long deliveryTimeoutMillis) {
+        this.deliveryTimeoutMillis = deliveryTimeoutMillis;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        checkOpen();
+        super.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        checkOpen();
+        super.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void reset() {
+        checkOpen();
+        super.reset();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("broadcast is closed");
+        }
+    }
+
+    /**
+     * Starts sending the job to all destinations. The call does not wait for
+     * the delivery, see <code>getCompletion()</code>.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closedNanos = System.nanoTime();
+        byte[] job = buf;
+        int len = count;
+        for (Destination destination : destinations.values()) {
+            Runnable delivery = () -> deliver(destination, job, len);
+            try {
+                if (executor == null) {
+                    Thread thread = new Thread(delivery, "BroadcastOutputStream-" + destination.name);
+                    thread.start();
+                } else {
+                    executor.execute(delivery);
+                }
+            } catch (RejectedExecutionException ex) {
+                destination.completion.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void deliver(Destination destination, byte[] job, int len) {
+        OutputStream outputStream = null;
+        try {
+            outputStream = destination.factory.open();
+            outputStream.write(job, 0, len);
+            long completedNanos;
+            if (outputStream instanceof CompletionAware) {
+                CompletableFuture<JobResult> delivery = ((CompletionAware) outputStream).getCompletion();
+                outputStream.close();
+                completedNanos = JobResult.await(delivery, deliveryTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .getCompletedNanos();
+            } else {
+                outputStream.flush();
+                outputStream.close();
+                completedNanos = System.nanoTime();
+            }
+            outputStream = null;
+            destination.completion.complete(new JobResult(len, createdNanos, closedNanos, completedNanos));
+        } catch (IOException | RuntimeException ex) {
+            destination.completion.completeExceptionally(ex);
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException | RuntimeException closeEx) {
+                    Logger.getLogger(this.getClass().getName()).log(Level.FINE, closeEx.getMessage(), closeEx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the completion of the job on all destinations.
+     * <p>
+     * The future completes when every destination is finished, successfully
+     * or not; it never completes exceptionally. See <code>getFailures()</code>
+     * for the destinations that failed.
+     *
+     * @return completion of the whole broadcast
+     */
+    public synchronized CompletableFuture<Void> getCompletion() {
+        CompletableFuture<?>[] all = new CompletableFuture<?>[destinations.size()];
+        int i = 0;
+        for (Destination destination : destinations.values()) {
+            all[i++] = destination.completion.handle((result, ex) -> null);
+        }
+        return CompletableFuture.allOf(all);
+    }
+
+    /**
+     * Gets the completion of the job on one destination.
+     *
+     * @param name name of the destination
+     * @return completion of the job, or null if there is no such destination
+     */
+    public synchronized CompletableFuture<JobResult> getCompletion(String name) {
+        Destination destination = destinations.get(name);
+        return destination == null ? null : destination.completion;
+    }
+
+    /**
+     * Gets the errors of the destinations that failed so far.
+     *
+     * @return map of destination name to error, in the order the destinations
+     * were added
+     */
+    public synchronized Map<String, Throwable> getFailures() {
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Destination destination : destinations.values()) {
+            if (destination.completion.isCompletedExceptionally()) {
+                try {
+                    destination.completion.join();
+                } catch (CompletionException ex) {
+                    failures.put(destination.name, ex.getCause());
+                } catch (CancellationException ex) {
+                    failures.put(destination.name, ex);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(failures);
+    }
+
+}
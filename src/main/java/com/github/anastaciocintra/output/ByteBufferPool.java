@@ -0,0 +1,249 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of reusable byte buffers used to assemble and send jobs.
+ * <p>
+ * Buffers are grouped in size classes (256 bytes to 64 KB); one request gets
+ * a buffer of the smallest class that fits. Requests bigger than the largest
+ * class are allocated and never pooled. The memory kept by idle buffers is
+ * capped, buffers released beyond the cap are left to the garbage
+ * collector.
+ * <p>
+ * The pool is the only place where buffer reuse is configured. It is used by
+ * the text encoding of <code>Printer</code>, the jobs of
+ * <code>SharedPrinterOutput</code>, the transfer buffer of
+ * <code>TcpIpOutputStream</code> and the blocks of
+ * <code>DeviceFileOutputStream</code>. The pipe and the thread that
+ * <code>TcpIpOutputStream</code> and <code>PrinterOutputStream</code> create
+ * for each job are not pooled; use one <code>SharedPrinterOutput</code> over
+ * one long-lived output when the per-job cost matters.
+ * <p>
+ * A buffer released again while it is idle on the pool is logged and
+ * ignored, so it is never handed to two owners. In debug mode the pool also
+ * keeps the stack trace of each buffer acquired and not released yet, so
+ * leaks and any other double release can be found with
+ * <code>reportLeaks()</code>.
+ */
+public class ByteBufferPool {
+
+    private static final int[] SIZE_CLASSES = {256, 1024, 4096, 16 * 1024, 64 * 1024};
+
+    private static final ByteBufferPool DEFAULT_HEAP = new ByteBufferPool(false, 16L * 1024 * 1024);
+    private static final ByteBufferPool DEFAULT_DIRECT = new ByteBufferPool(true, 16L * 1024 * 1024);
+
+    private final boolean direct;
+    private final long maxPooledBytes;
+    private final List<ConcurrentLinkedDeque<ByteBuffer>> idle = new ArrayList<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+    private volatile boolean debug;
+    private final Set<ByteBuffer> idleBuffers = Collections.newSetFromMap(
+            Collections.synchronizedMap(new IdentityHashMap<>()));
+    private final Map<ByteBuffer, Throwable> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * creates one instance of ByteBufferPool.
+     *
+     * @param direct true to pool direct buffers, false to pool heap buffers
+     * @param maxPooledBytes maximum memory kept by idle buffers
+     */
+    public ByteBufferPool(boolean direct, long maxPooledBytes) {
+        this.direct = direct;
+        this.maxPooledBytes = maxPooledBytes;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            idle.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * Gets the pool of heap buffers shared by the library, capped to 16 MB.
+     *
+     * @return shared pool
+     */
+    public static ByteBufferPool getDefaultHeap() {
+        return DEFAULT_HEAP;
+    }
+
+    /**
+     * Gets the pool of direct buffers shared by the library, capped to 16 MB.
+     *
+     * @return shared pool
+     */
+    public static ByteBufferPool getDefaultDirect() {
+        return DEFAULT_DIRECT;
+    }
+
+    /**
+     * Sets debug mode on/off. In debug mode the acquisition stack trace of
+     * each buffer is kept until the buffer is released.
+     *
+     * @param debug debug mode
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+        if (!debug) {
+            outstanding.clear();
+        }
+    }
+
+    /**
+     * Gets the kind of buffers of this pool.
+     *
+     * @return true if the pool supplies direct buffers, false if it supplies
+     * heap buffers, backed by one accessible array
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Gets one cleared buffer.
+     *
+     * @param minCapacity minimum capacity of the buffer
+     * @return buffer with capacity of at least minCapacity, must be given
+     * back with <code>release</code>
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = idle.get(sizeClass).pollFirst();
+        }
+        if (buffer != null) {
+            idleBuffers.remove(buffer);
+            pooledBytes.addAndGet(-buffer.capacity());
+            reuses.increment();
+            buffer.clear();
+        } else {
+            int capacity = sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : minCapacity;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            allocations.increment();
+        }
+        if (debug) {
+            outstanding.put(buffer, new Throwable("buffer acquired here"));
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives back one buffer acquired from this pool. The buffer must not be
+     * used after this call.
+     *
+     * @param buffer buffer to be reused
+     */
+    public void release(ByteBuffer buffer) {
+        if (debug && outstanding.remove(buffer) == null) {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING,
+                    "buffer released twice or not acquired from this pool",
+                    new Throwable("buffer released here"));
+            return;
+        }
+        int sizeClass = exactSizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        if (!idleBuffers.add(buffer)) {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING,
+                    "buffer released twice", new Throwable("buffer released here"));
+            return;
+        }
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            idleBuffers.remove(buffer);
+            return;
+        }
+        idle.get(sizeClass).offerFirst(buffer);
+    }
+
+    /**
+     * Gets number of buffers acquired and not released, only tracked in
+     * debug mode.
+     *
+     * @return actual value
+     */
+    public int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * Logs the acquisition stack trace of each buffer not released, only
+     * tracked in debug mode.
+     *
+     * @return number of buffers not released
+     */
+    public int reportLeaks() {
+        List<Throwable> traces;
+        synchronized (outstanding) {
+            traces = new ArrayList<>(outstanding.values());
+        }
+        Logger logger = Logger.getLogger(this.getClass().getName());
+        for (Throwable trace : traces) {
+            logger.log(Level.WARNING, "buffer not released", trace);
+        }
+        return traces.size();
+    }
+
+    /**
+     * Gets memory kept by idle buffers.
+     *
+     * @return bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Gets number of buffers allocated because no idle buffer was available.
+     *
+     * @return actual value
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * Gets number of requests served with one idle buffer.
+     *
+     * @return actual value
+     */
+    public long getReuses() {
+        return reuses.sum();
+    }
+
+    private static int sizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int exactSizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Output stream that reports when its job is delivered.
+ * <p>
+ * Streams that send on a background thread, like
+ * <code>TcpIpOutputStream</code>, complete after <code>close()</code> returns,
+ * when the last byte is delivered or the delivery fails. Streams that wrap
+ * another one, like <code>PacedOutputStream</code>, give the completion of
+ * the wrapped stream, or complete when <code>close()</code> returns if the
+ * wrapped stream does not report its completion.
+ */
+public interface CompletionAware {
+
+    /**
+     * Gets the completion of the job.
+     *
+     * @return completion of the job, completes exceptionally if the job is
+     * not delivered
+     */
+    CompletableFuture<JobResult> getCompletion();
+}
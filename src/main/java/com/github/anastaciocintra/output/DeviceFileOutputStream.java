@@ -0,0 +1,262 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Supply OutputStream to one printer exposed as device file.
+ * <p>
+ * On Linux, USB and serial printers are exposed as device files like
+ * <code>/dev/usb/lp0</code> or <code>/dev/ttyS0</code>. This stream writes
+ * directly on the device with <code>FileChannel</code>, without spooler. The
+ * bytes are collected on one buffer and written in blocks of the buffer size.
+ * <p>
+ * Each write on the device must finish before the write timeout, otherwise
+ * the channel is closed. On error the device is opened again and the
+ * remaining bytes are written, up to the configured number of attempts. The
+ * device file must exist, a regular file or a FIFO can be used for tests.
+ */
+public class DeviceFileOutputStream extends OutputStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private final Path path;
+    private final ByteBufferPool bufferPool;
+    private final int blockSize;
+    private ByteBuffer buffer;
+    private FileChannel channel;
+    private long writeTimeoutMillis = 10000;
+    private int maxReopenAttempts = 1;
+    private boolean closed;
+
+    /**
+     * creates one instance of DeviceFileOutputStream.
+     * <p>
+     * The device is opened on the first write. The block buffer is taken from
+     * the pool and given back on <code>close()</code>.
+     *
+     * @param path device file, like /dev/usb/lp0
+     * @param bufferSize size of each block written on the device
+     * @param bufferPool pool that supplies the block buffer
+     */
+    public DeviceFileOutputStream(Path path, int bufferSize, ByteBufferPool bufferPool) {
+        this.path = path;
+        this.bufferPool = bufferPool;
+        this.blockSize = bufferSize;
+        this.buffer = bufferPool.acquire(bufferSize);
+        this.buffer.limit(bufferSize);
+    }
+
+    /**
+     * creates one instance of DeviceFileOutputStream, the block buffer is
+     * taken from the default direct pool.
+     *
+     * @param path device file, like /dev/usb/lp0
+     * @param bufferSize size of each block written on the device
+     * @see ByteBufferPool#getDefaultDirect()
+     */
+    public DeviceFileOutputStream(Path path, int bufferSize) {
+        this(path, bufferSize, ByteBufferPool.getDefaultDirect());
+    }
+
+    /**
+     * creates one instance of DeviceFileOutputStream with blocks of 16 KB.
+     *
+     * @param path device file, like /dev/usb/lp0
+     */
+    public DeviceFileOutputStream(Path path) {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * creates one instance of DeviceFileOutputStream with blocks of 16 KB.
+     *
+     * @param path device file name, like /dev/usb/lp0
+     */
+    public DeviceFileOutputStream(String path) {
+        this(Paths.get(path));
+    }
+
+    /**
+     * Set the maximum time to write one block on the device. Default is 10
+     * seconds.
+     *
+     * @param writeTimeoutMillis timeout in milliseconds, zero means no timeout
+     */
+    public void setWriteTimeout(long writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    /**
+     * Set how many times the device is opened again after one error. Default
+     * is 1.
+     *
+     * @param maxReopenAttempts number of attempts
+     */
+    public void setMaxReopenAttempts(int maxReopenAttempts) {
+        this.maxReopenAttempts = maxReopenAttempts;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len >= blockSize && buffer.position() == 0) {
+            writeFully(ByteBuffer.wrap(b, off, len));
+            return;
+        }
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes on the device.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * Writes the buffered bytes and closes the device.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            closed = true;
+            closeChannel();
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+            buffer.limit(blockSize);
+        }
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        int attempt = 0;
+        while (true) {
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                while (src.hasRemaining()) {
+                    writeWithTimeout(src);
+                }
+                return;
+            } catch (IOException ex) {
+                closeChannel();
+                if (attempt++ >= maxReopenAttempts) {
+                    throw ex;
+                }
+                Logger.getLogger(this.getClass().getName()).log(Level.WARNING,
+                        "write on " + path + " failed, opening again", ex);
+            }
+        }
+    }
+
+    private void writeWithTimeout(ByteBuffer src) throws IOException {
+        if (writeTimeoutMillis <= 0) {
+            channel.write(src);
+            return;
+        }
+        final FileChannel target = channel;
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = OutputWatchdog.schedule(() -> {
+            timedOut.set(true);
+            try {
+                target.close();
+            } catch (IOException ignored) {
+                // the writer thread reports the timeout
+            }
+        }, writeTimeoutMillis);
+        try {
+            target.write(src);
+        } catch (IOException ex) {
+            if (timedOut.get()) {
+                throw timeoutException(ex);
+            }
+            throw ex;
+        } finally {
+            watchdog.cancel(false);
+        }
+        if (timedOut.get()) {
+            throw timeoutException(null);
+        }
+    }
+
+    private InterruptedIOException timeoutException(IOException cause) {
+        InterruptedIOException timeout = new InterruptedIOException(
+                "write on " + path + " timed out after " + writeTimeoutMillis + " ms");
+        timeout.initCause(cause);
+        return timeout;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(this.getClass().getName()).log(Level.FINE, ex.getMessage(), ex);
+        }
+        channel = null;
+    }
+
+}
@@ -0,0 +1,27 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+
+/**
+ * Signals that one print job was aborted because it did not finish before
+ * its deadline.
+ *
+ * @see TcpIpConfig#setJobDeadline(long)
+ */
+public class JobDeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * creates one instance of JobDeadlineExceededException.
+     *
+     * @param message detail message
+     */
+    public JobDeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Job being composed by one thread.
+ * <p>
+ * All bytes are kept on one buffer borrowed from the pool of the
+ * <code>SharedPrinterOutput</code> and are sent at once on
+ * <code>close()</code>. When the job grows, a bigger buffer is taken from the
+ * pool. The instance cannot be reused, writes after <code>close()</code> or
+ * <code>discard()</code> throw <code>IOException</code>; create another job
+ * with <code>SharedPrinterOutput.openJob()</code>.
+ *
+ * @see SharedPrinterOutput#openJob()
+ */
+public class JobOutputStream extends OutputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final SharedPrinterOutput owner;
+    private final ByteBufferPool bufferPool;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private ByteBuffer chunk;
+    private byte[] buf;
+    private int count;
+    private boolean closed;
+
+    JobOutputStream(SharedPrinterOutput owner, ByteBufferPool bufferPool, int initialSize) {
+        this.owner = owner;
+        this.bufferPool = bufferPool;
+        this.chunk = bufferPool.acquire(initialSize);
+        this.buf = chunk.array();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Gets the number of bytes of the job.
+     *
+     * @return actual value
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+    }
+
+    /**
+     * Gets the completion of the job.
+     * <p>
+     * Completes when the job is written on the shared output, exceptionally
+     * if the write fails, and is cancelled if the job is discarded.
+     *
+     * @return completion of the job
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= buf.length) {
+            return;
+        }
+        ByteBuffer bigger = bufferPool.acquire(Math.max(minCapacity, buf.length * 2));
+        System.arraycopy(buf, 0, bigger.array(), 0, count);
+        bufferPool.release(chunk);
+        chunk = bigger;
+        buf = bigger.array();
+    }
+
+    /**
+     * Sends the job to the shared output and gives back the buffer.
+     *
+     * @exception IOException if an I/O error occurs on the shared output
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            owner.submit(buf, count);
+            completion.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            completion.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            releaseBuffer();
+        }
+    }
+
+    /**
+     * Drops the job without sending anything and gives back the buffer.
+     */
+    public synchronized void discard() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseBuffer();
+        completion.cancel(false);
+    }
+
+    private void releaseBuffer() {
+        bufferPool.release(chunk);
+        chunk = null;
+        buf = EMPTY;
+        count = 0;
+    }
+
+}
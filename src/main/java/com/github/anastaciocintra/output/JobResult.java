@@ -0,0 +1,109 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timing of one print job delivered by an output stream.
+ * <p>
+ * All times are <code>System.nanoTime()</code> values.
+ */
+public class JobResult {
+
+    private final long bytes;
+    private final long createdNanos;
+    private final long closedNanos;
+    private final long completedNanos;
+
+    /**
+     * creates one instance of JobResult.
+     *
+     * @param bytes number of bytes delivered
+     * @param createdNanos when the stream was created
+     * @param closedNanos when close() was called on the stream
+     * @param completedNanos when the last byte was delivered
+     */
+    public JobResult(long bytes, long createdNanos, long closedNanos, long completedNanos) {
+        this.bytes = bytes;
+        this.createdNanos = createdNanos;
+        this.closedNanos = closedNanos;
+        this.completedNanos = completedNanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    public long getClosedNanos() {
+        return closedNanos;
+    }
+
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    /**
+     * Gets the end-to-end latency of the job.
+     *
+     * @return nanoseconds from the creation of the stream to the delivery
+     * of the last byte
+     */
+    public long getTotalNanos() {
+        return completedNanos - createdNanos;
+    }
+
+    /**
+     * Gets how long the delivery took after the job was closed.
+     *
+     * @return nanoseconds from close() to the delivery of the last byte
+     */
+    public long getDrainNanos() {
+        return completedNanos - closedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "JobResult{bytes=" + bytes
+                + ", totalMillis=" + TimeUnit.NANOSECONDS.toMillis(getTotalNanos())
+                + ", drainMillis=" + TimeUnit.NANOSECONDS.toMillis(getDrainNanos()) + "}";
+    }
+
+    /**
+     * Waits for the completion of one job.
+     *
+     * @param completion completion of the job
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return result of the job
+     * @exception IOException the error of the job, or InterruptedIOException
+     * when the timeout expires or the thread is interrupted
+     */
+    static JobResult await(CompletableFuture<JobResult> completion, long timeout, TimeUnit unit) throws IOException {
+        try {
+            return completion.get(timeout, unit);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (TimeoutException ex) {
+            throw new InterruptedIOException("job not completed after " + timeout + " " + unit);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the job");
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.anastaciocintra.printer.Commands;
+import com.github.anastaciocintra.printer.Dialect;
+
+/**
+ * Removes redundant commands from the stream sent to the printer.
+ * <p>
+ * The commands are parsed as they are written. State commands (font, size,
+ * bold, justification, line spacing, code table...) are held back until
+ * something is printed, so commands overwritten before that and commands
+ * that repeat the state already on the printer are dropped. The commands
+ * held back are sent in the order they were written, since some of them
+ * depend on others: line spacing is read in the motion unit set by
+ * <code>GS P</code>. Consecutive line feeds are merged into one feed command.
+ * <p>
+ * State commands left at the end of the job are sent on <code>close()</code>,
+ * so the next job on the same connection starts on the expected state. Use
+ * <code>setDropTrailingState(true)</code> when each job starts with
+ * <code>ESC @</code> anyway.
+ * <p>
+ * When an unknown command is found the optimizer cannot know its length, so
+ * from this point on the bytes are copied without changes. Macro definitions
+ * (<code>GS :</code>) are copied without changes too, since the macro can be
+ * executed later in any state, and the state is considered unknown after one
+ * macro definition or execution.
+ * <pre>
+ * OptimizingOutputStream optimizer = new OptimizingOutputStream(outputStream,
+ *         Dialect.ESC_POS);
+ * EscPosPrinter printer = new EscPosPrinter(optimizer);
+ * ...
+ * printer.close();
+ * long saved = optimizer.getBytesSaved();
+ * </pre>
+ */
+public class OptimizingOutputStream extends FilterOutputStream implements Commands, CompletionAware {
+
+    private static final int NEED_MORE = -1;
+    private static final int UNKNOWN = -2;
+
+    private static final int KIND_STATE = 0;
+    private static final int KIND_FEED = 1;
+    private static final int KIND_INIT = 2;
+    private static final int KIND_OTHER = 3;
+    private static final int KIND_INVALIDATE = 4;
+    private static final int KIND_MACRO = 5;
+
+    private static final int SLOT_FONT = 0;
+    private static final int SLOT_SIZE = 1;
+    private static final int SLOT_LINE_SPACING = 2;
+    private static final int SLOT_BOLD = 3;
+    private static final int SLOT_UNDERLINE = 4;
+    private static final int SLOT_JUSTIFICATION = 5;
+    private static final int SLOT_REVERSE = 6;
+    private static final int SLOT_CODE_PAGE = 7;
+    private static final int SLOT_MOTION = 8;
+    private static final int SLOT_KANJI = 9;
+    private static final int SLOTS = 10;
+
+    private static final int MAX_COMMAND = 16;
+
+    private final Dialect dialect;
+
+    private final byte[] cmd = new byte[MAX_COMMAND];
+    private int cmdLen;
+    private int cmdExpected;
+    private int cmdKind;
+    private int cmdSlot;
+    private long skipRemaining;
+    private boolean passThrough;
+    private boolean inMacro;
+
+    private final byte[][] emitted = new byte[SLOTS][MAX_COMMAND];
+    private final int[] emittedLen = new int[SLOTS];
+    private final byte[][] pending = new byte[SLOTS][MAX_COMMAND];
+    private final int[] pendingLen = new int[SLOTS];
+    private final int[] pendingOrder = new int[SLOTS];
+    private int pendingCount;
+    private boolean dropTrailingState;
+
+    private int pendingFeed;
+    private int feedPrefix0;
+    private int feedPrefix1;
+
+    private final byte[] buffer = new byte[8192];
+    private int count;
+
+    private long bytesIn;
+    private long bytesOut;
+
+    private final long createdNanos = System.nanoTime();
+    private final CompletableFuture<JobResult> closeCompletion = new CompletableFuture<>();
+
+    /**
+     * creates one instance of OptimizingOutputStream.
+     *
+     * @param out stream that receives the optimized commands
+     * @param dialect command set written on this stream
+     */
+    public OptimizingOutputStream(OutputStream out, Dialect dialect) {
+        super(out);
+        this.dialect = dialect;
+        clearState();
+    }
+
+    /**
+     * Sets whether state commands not followed by printable data are dropped
+     * on <code>close()</code>. Default is false, they are sent.
+     *
+     * @param dropTrailingState true to drop the trailing state commands
+     */
+    public void setDropTrailingState(boolean dropTrailingState) {
+        this.dropTrailingState = dropTrailingState;
+    }
+
+    /**
+     * Gets number of bytes written on this stream.
+     *
+     * @return actual value
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Gets number of bytes sent to the underlying stream.
+     *
+     * @return actual value
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Gets number of bytes removed from the job. The final value is known
+     * after <code>close()</code>.
+     *
+     * @return bytes in minus bytes out
+     */
+    public long getBytesSaved() {
+        return bytesIn - bytesOut;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        bytesIn++;
+        process(b & 0xFF);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bytesIn += len;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            process(b[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Sends pending line feeds and buffered bytes to the underlying stream.
+     * State commands not followed by printable data are kept.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        emitFeed();
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Sends pending line feeds and state commands and closes the underlying
+     * stream. State commands not followed by printable data are dropped when
+     * <code>setDropTrailingState(true)</code> was called.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        long closedNanos = System.nanoTime();
+        try {
+            try {
+                emitFeed();
+                if (!dropTrailingState) {
+                    emitPendingState();
+                }
+                if (cmdLen > 0) {
+                    emit(cmd, 0, cmdLen);
+                    cmdLen = 0;
+                }
+                flushBuffer();
+            } finally {
+                out.close();
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeCompletion.completeExceptionally(ex);
+            throw ex;
+        }
+        closeCompletion.complete(new JobResult(bytesOut, createdNanos, closedNanos, System.nanoTime()));
+    }
+
+    /**
+     * Gets the completion of the wrapped stream, or one completion that
+     * completes when this stream is closed if the wrapped stream does not
+     * report its completion.
+     *
+     * @return completion of the job
+     */
+    @Override
+    public CompletableFuture<JobResult> getCompletion() {
+        return out instanceof CompletionAware ? ((CompletionAware) out).getCompletion() : closeCompletion;
+    }
+
+    private void process(int b) throws IOException {
+        if (skipRemaining > 0) {
+            skipRemaining--;
+            emit(b);
+            return;
+        }
+        if (passThrough) {
+            emit(b);
+            return;
+        }
+        if (cmdLen == 0) {
+            if (b == ESC || (dialect == Dialect.ESC_POS && (b == GS || b == FS))) {
+                cmd[cmdLen++] = (byte) b;
+                cmdExpected = 0;
+                return;
+            }
+            if (!inMacro) {
+                emitFeed();
+                emitPendingState();
+            }
+            emit(b);
+            return;
+        }
+        cmd[cmdLen++] = (byte) b;
+        if (cmdExpected == 0) {
+            int expected = dialect == Dialect.ESC_POS ? classifyEscPos() : classifyStarPrnt();
+            if (expected == NEED_MORE && cmdLen < MAX_COMMAND) {
+                return;
+            }
+            if (expected < 0) {
+                emitFeed();
+                emitPendingState();
+                emit(cmd, 0, cmdLen);
+                cmdLen = 0;
+                passThrough = true;
+                return;
+            }
+            cmdExpected = expected;
+            if (cmdKind == KIND_OTHER && cmdExpected > MAX_COMMAND) {
+                emitFeed();
+                emitPendingState();
+                emit(cmd, 0, cmdLen);
+                skipRemaining = cmdExpected - cmdLen;
+                cmdLen = 0;
+                return;
+            }
+        }
+        if (cmdLen == cmdExpected) {
+            handleCommand();
+            cmdLen = 0;
+        }
+    }
+
+    private int state(int slot, int length) {
+        cmdKind = KIND_STATE;
+        cmdSlot = slot;
+        return length;
+    }
+
+    private int kind(int kind, int length) {
+        cmdKind = kind;
+        return length;
+    }
+
+    private int classifyEscPos() {
+        if (cmdLen < 2) {
+            return NEED_MORE;
+        }
+        int c1 = cmd[1] & 0xFF;
+        switch (cmd[0]) {
+            case ESC:
+                switch (c1) {
+                    case '@':
+                        return kind(KIND_INIT, 2);
+                    case 'M':
+                        return state(SLOT_FONT, 3);
+                    case '2':
+                        return state(SLOT_LINE_SPACING, 2);
+                    case '3':
+                        return state(SLOT_LINE_SPACING, 3);
+                    case 'E':
+                        return state(SLOT_BOLD, 3);
+                    case '-':
+                        return state(SLOT_UNDERLINE, 3);
+                    case 'a':
+                        return state(SLOT_JUSTIFICATION, 3);
+                    case 't':
+                        return state(SLOT_CODE_PAGE, 3);
+                    case 'd':
+                        return kind(KIND_FEED, 3);
+                    case 'J':
+                        return kind(KIND_OTHER, 3);
+                    case 'p':
+                        return kind(KIND_OTHER, 5);
+                    case '!':
+                        return kind(KIND_INVALIDATE, 3);
+                    default:
+                        return UNKNOWN;
+                }
+            case GS:
+                switch (c1) {
+                    case '!':
+                        return state(SLOT_SIZE, 3);
+                    case 'B':
+                        return state(SLOT_REVERSE, 3);
+                    case 'P':
+                        return state(SLOT_MOTION, 4);
+                    case 'V':
+                        if (cmdLen < 3) {
+                            return NEED_MORE;
+                        }
+                        int m = cmd[2] & 0xFF;
+                        return kind(KIND_OTHER, m == 0 || m == 1 || m == 48 || m == 49 ? 3 : 4);
+                    case ':':
+                        return kind(KIND_MACRO, 2);
+                    case '^':
+                        return kind(KIND_INVALIDATE, 5);
+                    case 'v':
+                        if (cmdLen < 8) {
+                            return NEED_MORE;
+                        }
+                        return cmd[2] == '0' ? kind(KIND_OTHER, 8 + rasterSize(4)) : UNKNOWN;
+                    default:
+                        return UNKNOWN;
+                }
+            case FS:
+                if (c1 == '&' || c1 == '.') {
+                    return state(SLOT_KANJI, 2);
+                }
+                return UNKNOWN;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private int classifyStarPrnt() {
+        if (cmdLen < 2) {
+            return NEED_MORE;
+        }
+        switch (cmd[1] & 0xFF) {
+            case '@':
+                return kind(KIND_INIT, 2);
+            case 'E':
+            case 'F':
+                return state(SLOT_BOLD, 2);
+            case '4':
+            case '5':
+                return state(SLOT_REVERSE, 2);
+            case '-':
+                return state(SLOT_UNDERLINE, 3);
+            case 'i':
+                return state(SLOT_SIZE, 4);
+            case 'z':
+                return state(SLOT_LINE_SPACING, 3);
+            case 'a':
+                return kind(KIND_FEED, 3);
+            case 'd':
+                return kind(KIND_OTHER, 3);
+            case BEL:
+                return kind(KIND_OTHER, 4);
+            case RS:
+                if (cmdLen < 3) {
+                    return NEED_MORE;
+                }
+                return cmd[2] == 'F' ? state(SLOT_FONT, 4) : UNKNOWN;
+            case GS:
+                if (cmdLen < 3) {
+                    return NEED_MORE;
+                }
+                switch (cmd[2]) {
+                    case 'a':
+                        return state(SLOT_JUSTIFICATION, 4);
+                    case 't':
+                        return state(SLOT_CODE_PAGE, 4);
+                    case ')':
+                        if (cmdLen < 6) {
+                            return NEED_MORE;
+                        }
+                        return kind(KIND_OTHER, 6 + (cmd[4] & 0xFF) + (cmd[5] & 0xFF) * 256);
+                    case 'S':
+                        if (cmdLen < 9) {
+                            return NEED_MORE;
+                        }
+                        return kind(KIND_OTHER, 9 + rasterSize(4));
+                    default:
+                        return UNKNOWN;
+                }
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * Gets the data size of one raster command.
+     *
+     * @param at index of xL, followed by xH, yL and yH
+     * @return bytes per row times rows
+     */
+    private int rasterSize(int at) {
+        int x = (cmd[at] & 0xFF) + (cmd[at + 1] & 0xFF) * 256;
+        int y = (cmd[at + 2] & 0xFF) + (cmd[at + 3] & 0xFF) * 256;
+        return x * y;
+    }
+
+    private void handleCommand() throws IOException {
+        if (inMacro && cmdKind != KIND_MACRO) {
+            emit(cmd, 0, cmdLen);
+            return;
+        }
+        switch (cmdKind) {
+            case KIND_STATE:
+                if (pendingLen[cmdSlot] >= 0) {
+                    if (sameCommand(pending[cmdSlot], pendingLen[cmdSlot])) {
+                        return;
+                    }
+                } else if (sameCommand(emitted[cmdSlot], emittedLen[cmdSlot])) {
+                    return;
+                }
+                emitFeed();
+                if (cmdSlot == SLOT_MOTION) {
+                    // line spacing is read in the motion unit current when it arrives
+                    emitPendingSlot(SLOT_LINE_SPACING);
+                    emittedLen[SLOT_LINE_SPACING] = -1;
+                }
+                removePending(cmdSlot);
+                if (!sameCommand(emitted[cmdSlot], emittedLen[cmdSlot])) {
+                    System.arraycopy(cmd, 0, pending[cmdSlot], 0, cmdLen);
+                    pendingLen[cmdSlot] = cmdLen;
+                    pendingOrder[pendingCount++] = cmdSlot;
+                }
+                return;
+            case KIND_FEED:
+                int lines = cmd[cmdLen - 1] & 0xFF;
+                if (lines == 0) {
+                    emitFeed();
+                    emitPendingState();
+                    emit(cmd, 0, cmdLen);
+                    return;
+                }
+                if (pendingFeed == 0) {
+                    emitPendingState();
+                    feedPrefix0 = cmd[0] & 0xFF;
+                    feedPrefix1 = cmd[1] & 0xFF;
+                }
+                pendingFeed += lines;
+                while (pendingFeed > 255) {
+                    emitFeedCommand(255);
+                    pendingFeed -= 255;
+                }
+                return;
+            case KIND_INIT:
+                emitFeed();
+                emit(cmd, 0, cmdLen);
+                clearState();
+                return;
+            case KIND_INVALIDATE:
+                emitFeed();
+                emitPendingState();
+                emit(cmd, 0, cmdLen);
+                clearState();
+                return;
+            case KIND_MACRO:
+                emitFeed();
+                emitPendingState();
+                emit(cmd, 0, cmdLen);
+                inMacro = !inMacro;
+                if (!inMacro) {
+                    clearState();
+                }
+                return;
+            default:
+                emitFeed();
+                emitPendingState();
+                emit(cmd, 0, cmdLen);
+        }
+    }
+
+    private boolean sameCommand(byte[] other, int otherLen) {
+        if (otherLen != cmdLen) {
+            return false;
+        }
+        for (int i = 0; i < cmdLen; i++) {
+            if (other[i] != cmd[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearState() {
+        for (int i = 0; i < SLOTS; i++) {
+            emittedLen[i] = -1;
+            pendingLen[i] = -1;
+        }
+        pendingCount = 0;
+    }
+
+    private void removePending(int slot) {
+        if (pendingLen[slot] < 0) {
+            return;
+        }
+        pendingLen[slot] = -1;
+        int j = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingOrder[i] != slot) {
+                pendingOrder[j++] = pendingOrder[i];
+            }
+        }
+        pendingCount = j;
+    }
+
+    private void emitSlot(int slot) throws IOException {
+        emit(pending[slot], 0, pendingLen[slot]);
+        System.arraycopy(pending[slot], 0, emitted[slot], 0, pendingLen[slot]);
+        emittedLen[slot] = pendingLen[slot];
+    }
+
+    private void emitPendingSlot(int slot) throws IOException {
+        if (pendingLen[slot] >= 0) {
+            emitSlot(slot);
+            removePending(slot);
+        }
+    }
+
+    private void emitPendingState() throws IOException {
+        for (int i = 0; i < pendingCount; i++) {
+            int slot = pendingOrder[i];
+            emitSlot(slot);
+            pendingLen[slot] = -1;
+        }
+        pendingCount = 0;
+    }
+
+    private void emitFeed() throws IOException {
+        if (pendingFeed > 0) {
+            emitFeedCommand(pendingFeed);
+            pendingFeed = 0;
+        }
+    }
+
+    private void emitFeedCommand(int lines) throws IOException {
+        emit(feedPrefix0);
+        emit(feedPrefix1);
+        emit(lines);
+    }
+
+    private void emit(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+        bytesOut++;
+    }
+
+    private void emit(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            emit(b[i]);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+}
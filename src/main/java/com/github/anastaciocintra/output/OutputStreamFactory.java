@@ -0,0 +1,26 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Opens the output stream of one printer.
+ * <p>
+ * Streams like <code>TcpIpOutputStream</code> cannot be reused, so the
+ * classes that send many jobs to the same printer open one stream when they
+ * need it.
+ */
+public interface OutputStreamFactory {
+
+    /**
+     * Opens one new stream connected to the printer.
+     *
+     * @return new stream
+     * @exception IOException if an I/O error occurs
+     */
+    OutputStream open() throws IOException;
+}
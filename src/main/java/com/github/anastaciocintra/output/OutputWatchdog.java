@@ -0,0 +1,41 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared timer used by the output streams to abort blocked operations.
+ */
+final class OutputWatchdog {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+            Thread thread = new Thread(r, "escpos-output-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private OutputWatchdog() {
+    }
+
+    /**
+     * Runs the task once after the delay, unless it is cancelled before.
+     *
+     * @param task task to be run, must be short
+     * @param delayMillis delay in milliseconds
+     * @return future used to cancel the task
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return EXECUTOR.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the rate of bytes sent to the printer.
+ * <p>
+ * Printers with small receive buffers drop data or stall when a large job,
+ * like a raster image, is sent faster than they can print. This stream takes
+ * the bytes from one token bucket: up to <code>burstBytes</code> (the receive
+ * buffer of the printer) are sent at once, after that the bytes are sent at
+ * <code>bytesPerSecond</code>, the sustainable rate of the printer. All the
+ * streams to the same printer must share the same bucket.
+ *
+ * @see TokenBucket
+ * @see com.github.anastaciocintra.printer.impl.PrinterProfile
+ */
+public class PacedOutputStream extends FilterOutputStream implements CompletionAware {
+
+    private final TokenBucket bucket;
+    private final long createdNanos = System.nanoTime();
+    private final CompletableFuture<JobResult> closeCompletion = new CompletableFuture<>();
+    private long bytesWritten;
+
+    /**
+     * creates one instance of PacedOutputStream.
+     *
+     * @param out stream connected to the printer
+     * @param bucket free space of the printer buffer, shared by all the
+     * streams to the printer
+     */
+    public PacedOutputStream(OutputStream out, TokenBucket bucket) {
+        super(out);
+        this.bucket = bucket;
+    }
+
+    /**
+     * creates one instance of PacedOutputStream with its own bucket. Use it
+     * only when this stream is the single connection to the printer for its
+     * whole life.
+     *
+     * @param out stream connected to the printer
+     * @param bytesPerSecond sustainable rate of the printer
+     * @param burstBytes bytes that can be sent at once, usually the size of
+     * the receive buffer of the printer
+     * @see #PacedOutputStream(OutputStream, TokenBucket)
+     */
+    public PacedOutputStream(OutputStream out, long bytesPerSecond, long burstBytes) {
+        this(out, new TokenBucket(bytesPerSecond, burstBytes));
+    }
+
+    public TokenBucket getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        bucket.acquire(1);
+        out.write(b);
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = bucket.acquire(len);
+            out.write(b, off, n);
+            bytesWritten += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Gets the completion of the wrapped stream, or one completion that
+     * completes when this stream is closed if the wrapped stream does not
+     * report its completion.
+     *
+     * @return completion of the job
+     */
+    @Override
+    public CompletableFuture<JobResult> getCompletion() {
+        return out instanceof CompletionAware ? ((CompletionAware) out).getCompletion() : closeCompletion;
+    }
+
+    @Override
+    public void close() throws IOException {
+        long closedNanos = System.nanoTime();
+        try {
+            super.close();
+        } catch (IOException | RuntimeException ex) {
+            closeCompletion.completeExceptionally(ex);
+            throw ex;
+        }
+        closeCompletion.complete(new JobResult(bytesWritten, createdNanos, closedNanos, System.nanoTime()));
+    }
+
+}
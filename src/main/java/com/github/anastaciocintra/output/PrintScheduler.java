@@ -0,0 +1,590 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules print jobs of many clients on many printers.
+ * <p>
+ * Each printer has one queue and one thread. Jobs are sent by priority; an
+ * urgent job does not wait for the end of a long job of lower priority,
+ * because jobs are sent in slices that end on safe boundaries given by the
+ * caller (after one full line, after one image band...). The interrupted job
+ * is resumed after the higher priority jobs. Jobs of the same priority are
+ * never interleaved; the next job is taken from the clients in round-robin,
+ * so one client cannot starve the others.
+ * <p>
+ * The urgent job usually starts with <code>ESC @</code>, which resets modes
+ * like the code table or Chinese mode. Each job can have one resume prefix,
+ * the commands that restore the state it needs, sent before each slice that
+ * follows bytes of another job. When the output stream fails, the job being
+ * sent and the interrupted jobs partially sent on that stream fail too,
+ * since the printer state and the bytes already received are unknown.
+ * <p>
+ * The output stream of one printer is opened when the queue receives work
+ * and closed when the queue stays idle, so one-shot streams like
+ * <code>TcpIpOutputStream</code> can be used. The jobs sent on one stream
+ * complete when it is closed, or when it is delivered if the stream is
+ * <code>CompletionAware</code>; if the close or the delivery fails, all of
+ * them fail.
+ * <pre>
+ * PrintScheduler scheduler = new PrintScheduler();
+ * scheduler.addPrinter("kitchen", () -&gt; new TcpIpOutputStream("10.0.0.5"));
+ * scheduler.submit("kitchen", PrintScheduler.Priority.URGENT, "pos-1", ticketBytes);
+ * </pre>
+ */
+public class PrintScheduler implements Closeable {
+
+    /**
+     * Job priorities, from the most to the least urgent.
+     */
+    public enum Priority {
+        URGENT,
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    /**
+     * Queue wait time of one priority.
+     */
+    public static final class QueueWaitStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Gets number of jobs started.
+         *
+         * @return actual value
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Gets mean time from submission to the first byte sent.
+         *
+         * @return nanoseconds
+         */
+        public long getMeanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / n;
+        }
+
+        /**
+         * Gets longest time from submission to the first byte sent.
+         *
+         * @return nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return "QueueWaitStats{count=" + getCount()
+                    + ", meanMillis=" + TimeUnit.NANOSECONDS.toMillis(getMeanNanos())
+                    + ", maxMillis=" + TimeUnit.NANOSECONDS.toMillis(getMaxNanos()) + "}";
+        }
+    }
+
+    private static final class Job {
+        final Priority priority;
+        final byte[] data;
+        final byte[] resumePrefix;
+        final int[] boundaries;
+        final long submittedNanos = System.nanoTime();
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        int position;
+
+        Job(Priority priority, byte[] data, byte[] resumePrefix, int[] boundaries) {
+            this.priority = priority;
+            this.data = data;
+            this.resumePrefix = resumePrefix;
+            this.boundaries = boundaries;
+        }
+
+        /**
+         * Gets the end of the next slice.
+         *
+         * @param maxSliceBytes preferred maximum size of one slice
+         * @return end index (exclusive)
+         */
+        int nextSliceEnd(int maxSliceBytes) {
+            int end = data.length;
+            for (int boundary : boundaries) {
+                if (boundary <= position) {
+                    continue;
+                }
+                if (boundary - position <= maxSliceBytes || end == data.length) {
+                    end = boundary;
+                }
+                if (boundary - position >= maxSliceBytes) {
+                    break;
+                }
+            }
+            return Math.min(end, data.length);
+        }
+    }
+
+    /**
+     * Jobs of one priority on one printer.
+     */
+    private static final class PriorityLevel {
+        final Map<String, ArrayDeque<Job>> clientJobs = new HashMap<>();
+        final ArrayDeque<String> clientTurns = new ArrayDeque<>();
+        Job active;
+    }
+
+    private final class PrinterQueue implements Runnable {
+
+        final String name;
+        final OutputStreamFactory factory;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition workAvailable = lock.newCondition();
+        final PriorityLevel[] levels = new PriorityLevel[Priority.values().length];
+        final Thread thread;
+        OutputStream outputStream;
+        // job of the last slice written on outputStream
+        Job lastJob;
+        // jobs fully written on outputStream, waiting for it to be closed
+        final ArrayDeque<Job> sentJobs = new ArrayDeque<>();
+        // set when the thread ends, no more jobs are taken
+        boolean stopped;
+
+        PrinterQueue(String name, OutputStreamFactory factory) {
+            this.name = name;
+            this.factory = factory;
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = new PriorityLevel();
+            }
+            thread = new Thread(this, "PrintScheduler-" + name);
+            thread.setDaemon(true);
+        }
+
+        void add(String client, Job job) {
+            lock.lock();
+            try {
+                if (closed || stopped) {
+                    throw new IllegalStateException("scheduler is closed");
+                }
+                PriorityLevel level = levels[job.priority.ordinal()];
+                ArrayDeque<Job> jobs = level.clientJobs.get(client);
+                if (jobs == null) {
+                    jobs = new ArrayDeque<>();
+                    level.clientJobs.put(client, jobs);
+                    level.clientTurns.offer(client);
+                }
+                jobs.offer(job);
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gets the job to be continued, must be called holding the lock.
+         *
+         * @return the job, or null when there is nothing to do
+         */
+        Job select() {
+            for (PriorityLevel level : levels) {
+                if (level.active != null) {
+                    return level.active;
+                }
+                String client = level.clientTurns.poll();
+                if (client == null) {
+                    continue;
+                }
+                ArrayDeque<Job> jobs = level.clientJobs.get(client);
+                Job job = jobs.poll();
+                if (jobs.isEmpty()) {
+                    level.clientJobs.remove(client);
+                } else {
+                    level.clientTurns.offer(client);
+                }
+                level.active = job;
+                return job;
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Job job;
+                lock.lock();
+                try {
+                    job = select();
+                    while (job == null) {
+                        if (outputStream != null) {
+                            if (idleCloseMillis > 0
+                                    && workAvailable.await(idleCloseMillis, TimeUnit.MILLISECONDS)) {
+                                job = select();
+                                continue;
+                            }
+                            break;
+                        }
+                        if (closed) {
+                            stopped = true;
+                            return;
+                        }
+                        workAvailable.await();
+                        job = select();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    stop();
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                if (job == null) {
+                    closeOutput();
+                    continue;
+                }
+                sendSlice(job);
+            }
+        }
+
+        void sendSlice(Job job) {
+            int start = job.position;
+            int end = job.nextSliceEnd(maxSliceBytes);
+            if (start == 0) {
+                waitStats.get(job.priority).record(System.nanoTime() - job.submittedNanos);
+            }
+            try {
+                if (outputStream == null) {
+                    outputStream = factory.open();
+                    lastJob = null;
+                }
+                if (start > 0 && lastJob != job && job.resumePrefix.length > 0) {
+                    outputStream.write(job.resumePrefix);
+                }
+                lastJob = job;
+                outputStream.write(job.data, start, end - start);
+                job.position = end;
+                if (end == job.data.length) {
+                    outputStream.flush();
+                    finish(job);
+                    sentJobs.add(job);
+                }
+            } catch (IOException | RuntimeException ex) {
+                finish(job);
+                job.completion.completeExceptionally(ex);
+                OutputStream failed = outputStream;
+                outputStream = null;
+                lastJob = null;
+                closeQuietly(failed);
+                failSent(ex);
+                failInterrupted(ex);
+            }
+        }
+
+        /**
+         * Fails the jobs fully written on one output stream that failed
+         * before it was closed, their bytes may not reach the printer.
+         */
+        void failSent(Throwable cause) {
+            for (Job job : sentJobs) {
+                job.completion.completeExceptionally(
+                        new IOException("output of " + name + " failed before the job was delivered", cause));
+            }
+            sentJobs.clear();
+        }
+
+        /**
+         * Fails the jobs partially sent on one output stream that failed,
+         * they cannot be continued on a new stream.
+         */
+        void failInterrupted(Exception cause) {
+            ArrayDeque<Job> failed = new ArrayDeque<>();
+            lock.lock();
+            try {
+                for (PriorityLevel level : levels) {
+                    if (level.active != null && level.active.position > 0) {
+                        failed.add(level.active);
+                        level.active = null;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Job job : failed) {
+                job.completion.completeExceptionally(
+                        new IOException("output of " + name + " failed while the job was interrupted", cause));
+            }
+        }
+
+        void finish(Job job) {
+            lock.lock();
+            try {
+                levels[job.priority.ordinal()].active = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Closes the output stream and completes the jobs sent on it, when
+         * the stream is closed or, if it is <code>CompletionAware</code>,
+         * when it is delivered.
+         */
+        void closeOutput() {
+            OutputStream stream = outputStream;
+            outputStream = null;
+            lastJob = null;
+            CompletableFuture<JobResult> delivery = stream instanceof CompletionAware
+                    ? ((CompletionAware) stream).getCompletion() : null;
+            try {
+                stream.close();
+            } catch (IOException | RuntimeException ex) {
+                failSent(ex);
+                return;
+            }
+            Job[] jobs = sentJobs.toArray(new Job[0]);
+            sentJobs.clear();
+            if (delivery == null) {
+                for (Job job : jobs) {
+                    job.completion.complete(null);
+                }
+                return;
+            }
+            delivery.whenComplete((result, ex) -> {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                for (Job job : jobs) {
+                    if (cause == null) {
+                        job.completion.complete(null);
+                    } else {
+                        job.completion.completeExceptionally(
+                                new IOException("output of " + name + " was not delivered", cause));
+                    }
+                }
+            });
+        }
+
+        /**
+         * Ends the queue when its thread is interrupted, the jobs not sent
+         * fail.
+         */
+        void stop() {
+            ArrayDeque<Job> failed = new ArrayDeque<>();
+            lock.lock();
+            try {
+                stopped = true;
+                for (PriorityLevel level : levels) {
+                    if (level.active != null) {
+                        failed.add(level.active);
+                        level.active = null;
+                    }
+                    for (ArrayDeque<Job> jobs : level.clientJobs.values()) {
+                        failed.addAll(jobs);
+                    }
+                    level.clientJobs.clear();
+                    level.clientTurns.clear();
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Job job : failed) {
+                job.completion.completeExceptionally(
+                        new InterruptedIOException("output of " + name + " was stopped"));
+            }
+            if (outputStream != null) {
+                closeOutput();
+            }
+        }
+
+        void closeQuietly(OutputStream stream) {
+            if (stream == null) {
+                return;
+            }
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                Logger.getLogger(PrintScheduler.class.getName()).log(Level.FINE, ex.getMessage(), ex);
+            }
+        }
+
+        void wakeUp() {
+            lock.lock();
+            try {
+                workAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Map<String, PrinterQueue> printers = new ConcurrentHashMap<>();
+    private final Map<Priority, QueueWaitStats> waitStats = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private volatile int maxSliceBytes = 2048;
+    private volatile long idleCloseMillis = 0;
+
+    /**
+     * creates one instance of PrintScheduler.
+     */
+    public PrintScheduler() {
+        for (Priority priority : Priority.values()) {
+            waitStats.put(priority, new QueueWaitStats());
+        }
+    }
+
+    /**
+     * Sets the preferred maximum size of one slice. Smaller slices let urgent
+     * jobs start sooner. Default is 2048.
+     *
+     * @param maxSliceBytes size in bytes
+     * @return this object
+     */
+    public PrintScheduler setMaxSliceBytes(int maxSliceBytes) {
+        this.maxSliceBytes = maxSliceBytes;
+        return this;
+    }
+
+    /**
+     * Sets how long the output stream of one idle printer stays open waiting
+     * for the next job. Default is zero, the stream is closed as soon as the
+     * queue is empty.
+     *
+     * @param idleCloseMillis time in milliseconds
+     * @return this object
+     */
+    public PrintScheduler setIdleCloseMillis(long idleCloseMillis) {
+        this.idleCloseMillis = idleCloseMillis;
+        return this;
+    }
+
+    /**
+     * Registers one printer and starts its thread.
+     *
+     * @param name name used on submit
+     * @param factory opens the output stream of the printer
+     * @return this object
+     */
+    public PrintScheduler addPrinter(String name, OutputStreamFactory factory) {
+        PrinterQueue queue = new PrinterQueue(name, factory);
+        if (printers.putIfAbsent(name, queue) != null) {
+            throw new IllegalArgumentException("printer " + name + " is already registered");
+        }
+        queue.thread.start();
+        return this;
+    }
+
+    /**
+     * Submits one job without resume prefix.
+     *
+     * @param printer name of the printer
+     * @param priority priority of the job
+     * @param client client that submits the job, used to share the printer
+     * fairly
+     * @param data the job bytes, must not be changed after the submission
+     * @param safeBoundaries offsets where the job can be interrupted by jobs
+     * of higher priority, like the end of each line or image band. Without
+     * boundaries the job is sent at once.
+     * @return completion of the job, when the printer output stream that
+     * sent it is closed or delivered
+     * @exception IllegalStateException if the scheduler is closed
+     * @see #submit(String, Priority, String, byte[], byte[], int...)
+     */
+    public CompletableFuture<Void> submit(String printer, Priority priority, String client,
+            byte[] data, int... safeBoundaries) {
+        return submit(printer, priority, client, data, new byte[0], safeBoundaries);
+    }
+
+    /**
+     * Submits one job.
+     *
+     * @param printer name of the printer
+     * @param priority priority of the job
+     * @param client client that submits the job, used to share the printer
+     * fairly
+     * @param data the job bytes, must not be changed after the submission
+     * @param resumePrefix commands that restore the printer state the job
+     * needs (code table, Chinese mode, motion units...), sent before each
+     * slice that resumes the job after another job
+     * @param safeBoundaries offsets where the job can be interrupted by jobs
+     * of higher priority, like the end of each line or image band. Without
+     * boundaries the job is sent at once.
+     * @return completion of the job, when the printer output stream that
+     * sent it is closed or delivered
+     * @exception IllegalStateException if the scheduler is closed
+     */
+    public CompletableFuture<Void> submit(String printer, Priority priority, String client,
+            byte[] data, byte[] resumePrefix, int... safeBoundaries) {
+        if (closed) {
+            throw new IllegalStateException("scheduler is closed");
+        }
+        PrinterQueue queue = printers.get(printer);
+        if (queue == null) {
+            throw new IllegalArgumentException("printer " + printer + " is not registered");
+        }
+        int[] boundaries = safeBoundaries.clone();
+        Arrays.sort(boundaries);
+        Job job = new Job(priority, data, resumePrefix.clone(), boundaries);
+        queue.add(client, job);
+        return job.completion;
+    }
+
+    /**
+     * Gets the queue wait time of jobs of one priority.
+     *
+     * @param priority priority class
+     * @return statistics, updated while jobs are started
+     */
+    public QueueWaitStats getQueueWaitStats(Priority priority) {
+        return waitStats.get(priority);
+    }
+
+    /**
+     * Stops accepting jobs, waits the queued jobs to be sent and closes the
+     * output streams. Jobs submitted while closing are rejected.
+     *
+     * @exception IOException if interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (PrinterQueue queue : printers.values()) {
+            queue.wakeUp();
+        }
+        for (PrinterQueue queue : printers.values()) {
+            try {
+                queue.thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while closing the scheduler");
+            }
+        }
+    }
+
+}
@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.print.Doc;
@@ -26,10 +28,14 @@ import javax.print.SimpleDoc;
  * be reused and the last command should be <code>close()</code>, after that,
  * you need to create another instance to send data to the printer.
  */
-public class PrinterOutputStream extends PipedOutputStream {
+public class PrinterOutputStream extends PipedOutputStream implements CompletionAware {
 
     protected final PipedInputStream pipedInputStream;
     protected final Thread threadPrint;
+    private final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+    private final long createdNanos = System.nanoTime();
+    private volatile long closedNanos;
+    private long bytesWritten;
 
     /**
      * creates one instance of PrinterOutputStream.
@@ -58,8 +64,13 @@ public class PrinterOutputStream extends PipedOutputStream {
 
                 DocPrintJob job = printService.createPrintJob();
                 job.print(d, null);
+                completion.complete(new JobResult(bytesWritten, createdNanos, closedNanos, System.nanoTime()));
             } catch (PrintException ex) {
+                completion.completeExceptionally(new IOException(ex));
                 throw new RuntimeException(ex);
+            } catch (RuntimeException ex) {
+                completion.completeExceptionally(ex);
+                throw ex;
             }
         };
 
@@ -90,6 +101,55 @@ public class PrinterOutputStream extends PipedOutputStream {
         threadPrint.setUncaughtExceptionHandler(uncaughtException);
     }
 
+    /**
+     * Gets the completion of the job.
+     * <p>
+     * The future completes when <code>DocPrintJob.print</code> returns, with
+     * the timing of the job, or completes exceptionally with the error of the
+     * print job.
+     *
+     * @return completion of the job
+     */
+    @Override
+    public CompletableFuture<JobResult> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Closes the stream and waits until the print job is accepted by the
+     * print service.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return timing of the job
+     * @exception IOException if an I/O error occurs, the error of the print
+     * job, or InterruptedIOException when the timeout expires
+     */
+    public JobResult closeAndWait(long timeout, TimeUnit unit) throws IOException {
+        close();
+        return JobResult.await(completion, timeout, unit);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        bytesWritten += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closedNanos == 0) {
+            closedNanos = System.nanoTime();
+        }
+        super.close();
+    }
+
     /**
      * Get the name of all printers on the system.
      *
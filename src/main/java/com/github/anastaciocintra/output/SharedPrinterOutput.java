@@ -0,0 +1,107 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One physical printer shared by many threads.
+ * <p>
+ * <code>Printer</code> is not thread-safe, so each thread creates its own
+ * printer instance over one job obtained with <code>openJob()</code>, composes
+ * the whole receipt on it and then calls <code>close()</code>. Composition runs
+ * in parallel, only the final handoff to the shared output stream is ordered
+ * and the job bytes are never interleaved with other jobs.
+ * <pre>
+ * SharedPrinterOutput shared = new SharedPrinterOutput(outputStream);
+ * // on each thread
+ * EscPosPrinter printer = new EscPosPrinter(shared.openJob());
+ * printer.writeLF("Hello world");
+ * printer.close(); // sends the job atomically
+ * </pre>
+ */
+public class SharedPrinterOutput implements Closeable {
+
+    private static final int INITIAL_JOB_SIZE = 4096;
+
+    private final OutputStream outputStream;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final ByteBufferPool bufferPool;
+
+    /**
+     * creates one instance of SharedPrinterOutput.
+     *
+     * @param outputStream output of the physical printer, jobs are written
+     * on it one after another.
+     * @param bufferPool pool of heap buffers used by the jobs, its limits
+     * define how many job buffers are kept to be reused
+     */
+    public SharedPrinterOutput(OutputStream outputStream, ByteBufferPool bufferPool) {
+        if (bufferPool.isDirect()) {
+            throw new IllegalArgumentException("bufferPool must supply heap buffers");
+        }
+        this.outputStream = outputStream;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * creates one instance of SharedPrinterOutput using the default heap pool.
+     *
+     * @param outputStream output of the physical printer, jobs are written
+     * on it one after another.
+     * @see ByteBufferPool#getDefaultHeap()
+     */
+    public SharedPrinterOutput(OutputStream outputStream) {
+        this(outputStream, ByteBufferPool.getDefaultHeap());
+    }
+
+    /**
+     * Creates one job to be composed by the calling thread.
+     * <p>
+     * The job can be used as output stream of any printer implementation. The
+     * job is sent when it is closed.
+     *
+     * @return new job
+     */
+    public JobOutputStream openJob() {
+        return new JobOutputStream(this, bufferPool, INITIAL_JOB_SIZE);
+    }
+
+    /**
+     * Writes the whole job on the shared output stream.
+     *
+     * @param b job bytes
+     * @param len number of bytes of the job
+     * @exception IOException if an I/O error occurs
+     */
+    void submit(byte[] b, int len) throws IOException {
+        lock.lock();
+        try {
+            outputStream.write(b, 0, len);
+            outputStream.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the shared output stream. Jobs being sent are finished before.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            outputStream.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
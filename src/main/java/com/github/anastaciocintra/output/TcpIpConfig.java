@@ -0,0 +1,98 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+/**
+ * Socket options and timeouts used by <code>TcpIpOutputStream</code>.
+ */
+public class TcpIpConfig {
+
+    private int connectTimeout = 10000;
+    private long jobDeadline = 0;
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize = 0;
+    private int lingerSeconds = -1;
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets maximum time to connect to the printer. Default is 10 seconds.
+     *
+     * @param connectTimeout timeout in milliseconds, zero means no timeout
+     * @return this object
+     */
+    public TcpIpConfig setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public long getJobDeadline() {
+        return jobDeadline;
+    }
+
+    /**
+     * Sets maximum time of the whole job, counted from the creation of the
+     * stream. When the deadline is reached the connection is aborted and
+     * <code>JobDeadlineExceededException</code> is thrown to the caller.
+     * Default is no deadline.
+     *
+     * @param jobDeadline deadline in milliseconds, zero means no deadline
+     * @return this object
+     * @see JobDeadlineExceededException
+     */
+    public TcpIpConfig setJobDeadline(long jobDeadline) {
+        this.jobDeadline = jobDeadline;
+        return this;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Sets TCP_NODELAY (disable Nagle's algorithm). Default is true.
+     *
+     * @param tcpNoDelay true to send small writes immediately
+     * @return this object
+     */
+    public TcpIpConfig setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Sets SO_SNDBUF of the socket. Default is the system value.
+     *
+     * @param sendBufferSize size in bytes, zero means system value
+     * @return this object
+     */
+    public TcpIpConfig setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public int getLingerSeconds() {
+        return lingerSeconds;
+    }
+
+    /**
+     * Sets SO_LINGER of the socket, how long close waits for unsent data.
+     * Default is the system behavior.
+     *
+     * @param lingerSeconds linger time in seconds, negative means system
+     * behavior
+     * @return this object
+     */
+    public TcpIpConfig setLingerSeconds(int lingerSeconds) {
+        this.lingerSeconds = lingerSeconds;
+        return this;
+    }
+}
@@ -7,7 +7,13 @@ package com.github.anastaciocintra.output;
 
 
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,9 +25,13 @@ import java.util.logging.Logger;
  * be reused and the last command should be <code>close()</code>, after that,
  * you need to create another instance to send data to the printer.
  */
-public class TcpIpOutputStream  extends PipedOutputStream {
+public class TcpIpOutputStream  extends PipedOutputStream implements CompletionAware {
     protected final PipedInputStream pipedInputStream;
     protected final Thread threadPrint;
+    private volatile IOException failure;
+    private final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+    private final long createdNanos = System.nanoTime();
+    private volatile long closedNanos;
 
 
 
@@ -31,34 +41,84 @@ public class TcpIpOutputStream  extends PipedOutputStream {
      *
      * @param host - the IP address
      * @param port - the port number
+     * @param config - timeouts and socket options
      * @exception IOException if an I/O error occurs.
      * @exception RuntimeException if an error occurs while in thread
      * @see java.net.Socket
      */
-
-    public TcpIpOutputStream(String host, int port) throws IOException {
+    public TcpIpOutputStream(String host, int port, TcpIpConfig config) throws IOException {
         pipedInputStream = new PipedInputStream();
         super.connect(pipedInputStream);
         Thread.UncaughtExceptionHandler uncaughtException = (Thread t, Throwable e) -> {
             Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, e.getMessage(),e);
         };
-
+        long deadline = config.getJobDeadline();
 
         Runnable runnablePrint = () -> {
+            Thread printThread = Thread.currentThread();
+            AtomicBoolean deadlineExceeded = new AtomicBoolean();
+            ScheduledFuture<?> deadlineTask = null;
+            Socket socket = new Socket();
+            ByteBuffer chunk = ByteBufferPool.getDefaultHeap().acquire(4096);
 
-            try (Socket socket = new Socket(host,port)) {
+            try {
+                if (deadline > 0) {
+                    deadlineTask = OutputWatchdog.schedule(() -> {
+                        deadlineExceeded.set(true);
+                        printThread.interrupt();
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                            // the print thread reports the deadline
+                        }
+                    }, deadline);
+                }
+                socket.setTcpNoDelay(config.isTcpNoDelay());
+                if (config.getSendBufferSize() > 0) {
+                    socket.setSendBufferSize(config.getSendBufferSize());
+                }
+                if (config.getLingerSeconds() >= 0) {
+                    socket.setSoLinger(true, config.getLingerSeconds());
+                }
+                socket.connect(new InetSocketAddress(host, port), config.getConnectTimeout());
 
                 OutputStream outputStream = socket.getOutputStream();
 
 
-                byte[] buf = new byte[1024];
+                byte[] buf = chunk.array();
+                long sent = 0;
                 while(true) {
                     int n = pipedInputStream.read(buf);
                     if( n < 0 ) break;
                     outputStream.write(buf,0,n);
+                    sent += n;
                 }
+                outputStream.flush();
+                completion.complete(new JobResult(sent, createdNanos, closedNanos, System.nanoTime()));
             } catch (Exception ex) {
-                throw new RuntimeException(ex);
+                IOException cause;
+                if (deadlineExceeded.get()) {
+                    cause = new JobDeadlineExceededException(
+                            "job to " + host + ":" + port + " exceeded the deadline of " + deadline + " ms");
+                    cause.initCause(ex);
+                } else if (ex instanceof IOException) {
+                    cause = (IOException) ex;
+                } else {
+                    cause = new IOException(ex);
+                }
+                failure = cause;
+                completion.completeExceptionally(cause);
+                throw new RuntimeException(cause);
+            } finally {
+                if (deadlineTask != null) {
+                    deadlineTask.cancel(false);
+                }
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(this.getClass().getName()).log(Level.FINE, ex.getMessage(), ex);
+                }
+                ByteBufferPool.getDefaultHeap().release(chunk);
             }
 
         };
@@ -70,6 +130,22 @@ public class TcpIpOutputStream  extends PipedOutputStream {
 
     }
 
+    /**
+     * creates one instance of TcpIpOutputStream with default timeouts and
+     * socket options.
+     * <p>
+     *
+     * @param host - the IP address
+     * @param port - the port number
+     * @exception IOException if an I/O error occurs.
+     * @exception RuntimeException if an error occurs while in thread
+     * @see java.net.Socket
+     * @see TcpIpConfig
+     */
+    public TcpIpOutputStream(String host, int port) throws IOException {
+        this(host, port, new TcpIpConfig());
+    }
+
     /**
      * creates one instance of TcpIpOutputStream using default port 9100
      * <p>
@@ -94,4 +170,104 @@ public class TcpIpOutputStream  extends PipedOutputStream {
         threadPrint.setUncaughtExceptionHandler(uncaughtException);
     }
 
+    /**
+     * Gets the completion of the job.
+     * <p>
+     * The future completes when all bytes were handed to the socket, with the
+     * timing of the job, or completes exceptionally with the error that
+     * stopped the print thread.
+     *
+     * @return completion of the job
+     */
+    @Override
+    public CompletableFuture<JobResult> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Closes the stream and waits until the job is delivered.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return timing of the job
+     * @exception IOException if an I/O error occurs, the error that stopped
+     * the print thread, or InterruptedIOException when the timeout expires
+     */
+    public JobResult closeAndWait(long timeout, TimeUnit unit) throws IOException {
+        close();
+        return JobResult.await(completion, timeout, unit);
+    }
+
+    /**
+     * Gets the error that stopped the print thread.
+     *
+     * @return the error, or null while no error happened
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkFailure();
+        try {
+            super.write(b);
+        } catch (IOException ex) {
+            throw failureOr(ex);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkFailure();
+        try {
+            super.write(b, off, len);
+        } catch (IOException ex) {
+            throw failureOr(ex);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        try {
+            super.flush();
+        } catch (IOException ex) {
+            throw failureOr(ex);
+        }
+    }
+
+    /**
+     * Closes the stream, the print thread sends the remaining data. Closing
+     * again has no effect.
+     *
+     * @exception IOException if an I/O error occurs, or the error that
+     * stopped the print thread, like <code>JobDeadlineExceededException</code>
+     */
+    @Override
+    public void close() throws IOException {
+        if (closedNanos != 0) {
+            return;
+        }
+        closedNanos = System.nanoTime();
+        try {
+            super.close();
+        } catch (IOException ex) {
+            throw failureOr(ex);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException ex = failure;
+        if (ex != null) {
+            throw ex;
+        }
+    }
+
+    private IOException failureOr(IOException ex) {
+        IOException known = failure;
+        return known != null ? known : ex;
+    }
+
 }
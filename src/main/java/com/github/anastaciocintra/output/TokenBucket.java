@@ -0,0 +1,91 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Free space of the receive buffer of one physical printer.
+ * <p>
+ * The bucket holds up to <code>burstBytes</code> tokens (the receive buffer
+ * of the printer) and is refilled at <code>bytesPerSecond</code>, the rate
+ * the printer consumes its buffer. Streams like
+ * <code>TcpIpOutputStream</code> are opened for each job, so the bucket must
+ * outlive them: share one instance among all the streams to the same
+ * printer, otherwise each job starts with a full burst while the printer may
+ * still be busy with the previous one.
+ *
+ * @see PacedOutputStream
+ */
+public class TokenBucket {
+
+    private final double bytesPerNano;
+    private final long burstBytes;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * creates one instance of TokenBucket, full.
+     *
+     * @param bytesPerSecond sustainable rate of the printer
+     * @param burstBytes bytes that can be sent at once, usually the size of
+     * the receive buffer of the printer
+     */
+    public TokenBucket(long bytesPerSecond, long burstBytes) {
+        if (bytesPerSecond <= 0 || burstBytes <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond and burstBytes must be positive");
+        }
+        this.bytesPerNano = bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until at least one byte can be sent and takes the tokens.
+     *
+     * @param wanted number of bytes to be sent
+     * @return number of bytes allowed now, between 1 and wanted
+     * @exception InterruptedIOException if the thread is interrupted
+     */
+    public int acquire(int wanted) throws IOException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(burstBytes, tokens + (now - lastRefill) * bytesPerNano);
+                lastRefill = now;
+                if (tokens >= 1) {
+                    int n = (int) Math.min(wanted, (long) tokens);
+                    tokens -= n;
+                    return n;
+                }
+                long needed = Math.min(wanted, burstBytes);
+                waitNanos = (long) Math.ceil((needed - tokens) / bytesPerNano);
+            }
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while pacing the output");
+            }
+        }
+    }
+
+    /**
+     * Gets bytes that can be sent now without waiting.
+     *
+     * @return available tokens
+     */
+    public synchronized long getAvailable() {
+        long now = System.nanoTime();
+        tokens = Math.min(burstBytes, tokens + (now - lastRefill) * bytesPerNano);
+        lastRefill = now;
+        return (long) tokens;
+    }
+
+}
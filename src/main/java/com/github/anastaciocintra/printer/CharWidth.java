@@ -0,0 +1,89 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+/**
+ * Printed width of characters, measured in half-width cells.
+ * <p>
+ * CJK ideographs, Hangul, kana and full-width forms use two cells, combining
+ * marks and control characters use none and everything else uses one. The
+ * Basic Multilingual Plane is resolved with two precomputed bit tables, so
+ * one lookup costs a shift and a mask.
+ */
+public final class CharWidth {
+
+    private static final long[] WIDE = new long[1024];
+    private static final long[] ZERO = new long[1024];
+
+    static {
+        setRange(WIDE, 0x1100, 0x115F);
+        setRange(WIDE, 0x2E80, 0x303E);
+        setRange(WIDE, 0x3041, 0x33FF);
+        setRange(WIDE, 0x3400, 0x4DBF);
+        setRange(WIDE, 0x4E00, 0x9FFF);
+        setRange(WIDE, 0xA000, 0xA4CF);
+        setRange(WIDE, 0xAC00, 0xD7A3);
+        setRange(WIDE, 0xF900, 0xFAFF);
+        setRange(WIDE, 0xFE30, 0xFE4F);
+        setRange(WIDE, 0xFF00, 0xFF60);
+        setRange(WIDE, 0xFFE0, 0xFFE6);
+
+        setRange(ZERO, 0x0000, 0x001F);
+        setRange(ZERO, 0x007F, 0x009F);
+        setRange(ZERO, 0x0300, 0x036F);
+        setRange(ZERO, 0x200B, 0x200F);
+        setRange(ZERO, 0xFE00, 0xFE0F);
+        setRange(ZERO, 0xFEFF, 0xFEFF);
+    }
+
+    private CharWidth() {
+    }
+
+    private static void setRange(long[] table, int first, int last) {
+        for (int c = first; c <= last; c++) {
+            table[c >>> 6] |= 1L << c;
+        }
+    }
+
+    /**
+     * Gets the number of cells used by one code point.
+     *
+     * @param codePoint character to be measured
+     * @return 0, 1 or 2
+     */
+    public static int width(int codePoint) {
+        if (codePoint < 0x10000) {
+            if ((WIDE[codePoint >>> 6] & (1L << codePoint)) != 0) {
+                return 2;
+            }
+            if ((ZERO[codePoint >>> 6] & (1L << codePoint)) != 0) {
+                return 0;
+            }
+            return 1;
+        }
+        return codePoint >= 0x20000 && codePoint <= 0x3FFFD ? 2 : 1;
+    }
+
+    /**
+     * Gets the number of cells used by a text.
+     *
+     * @param text content to be measured
+     * @return sum of the width of all code points
+     */
+    public static int width(CharSequence text) {
+        int total = 0;
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                total += width(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                total += width(c);
+            }
+        }
+        return total;
+    }
+
+}
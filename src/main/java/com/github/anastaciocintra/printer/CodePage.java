@@ -0,0 +1,30 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+/**
+ * Character code tables selectable on the printer.
+ * <p>
+ * Each value keeps the Java charset name and the table number used by the
+ * ESC/POS (<code>ESC t n</code>) and StarPRNT (<code>ESC GS t n</code>)
+ * commands.
+ */
+public enum CodePage {
+    CP437("IBM437", 0, 1),
+    CP852("IBM852", 18, 5),
+    CP858("IBM00858", 19, 4),
+    CP866("IBM866", 17, 10),
+    WPC1252("windows-1252", 16, 32);
+
+    public final String charsetName;
+    public final int escPosValue;
+    public final int starPrntValue;
+
+    private CodePage(String charsetName, int escPosValue, int starPrntValue) {
+        this.charsetName = charsetName;
+        this.escPosValue = escPosValue;
+        this.starPrntValue = starPrntValue;
+    }
+}
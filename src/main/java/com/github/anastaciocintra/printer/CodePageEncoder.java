@@ -0,0 +1,173 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes text using several code pages, switching between them inline.
+ * <p>
+ * Each character is resolved with precomputed char to (code page, byte)
+ * tables. When the active code page cannot represent the next character, the
+ * encoder selects the code page able to encode the longest run of following
+ * characters, which gives the minimal number of switch commands on the line.
+ * Characters not available on any code page are replaced by '?'.
+ * <p>
+ * The encoder keeps the code page active on the printer, so one instance must
+ * be used by only one <code>Printer</code>. The printer resets it on
+ * <code>initialize()</code>, which selects the default code table.
+ *
+ * @see Printer#setCodePageEncoder(CodePageEncoder)
+ */
+public class CodePageEncoder {
+
+    private static final byte[][][] CHAR_TO_BYTE = new byte[CodePage.values().length][][];
+
+    static {
+        for (CodePage codePage : CodePage.values()) {
+            CHAR_TO_BYTE[codePage.ordinal()] = buildTable(codePage);
+        }
+    }
+
+    private final Dialect dialect;
+    private final CodePage[] codePages;
+    private final int[][] masks = new int[256][];
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private int current = -1;
+
+    /**
+     * Creates one encoder.
+     *
+     * @param dialect command set of the printer, selects the switch command
+     * @param codePages code pages to be used, in order of preference. The
+     * first one is selected when more than one can encode the text.
+     */
+    public CodePageEncoder(Dialect dialect, CodePage... codePages) {
+        if (codePages.length == 0 || codePages.length > 32) {
+            throw new IllegalArgumentException("codePages must have between 1 and 32 values");
+        }
+        this.dialect = dialect;
+        this.codePages = codePages.clone();
+        for (int i = 0; i < codePages.length; i++) {
+            byte[][] table = CHAR_TO_BYTE[codePages[i].ordinal()];
+            for (int high = 0; high < 256; high++) {
+                if (table[high] == null) {
+                    continue;
+                }
+                if (masks[high] == null) {
+                    masks[high] = new int[256];
+                }
+                for (int low = 0; low < 256; low++) {
+                    if (table[high][low] != 0) {
+                        masks[high][low] |= 1 << i;
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[][] buildTable(CodePage codePage) {
+        byte[][] table = new byte[256][];
+        if (!Charset.isSupported(codePage.charsetName)) {
+            return table;
+        }
+        CharsetDecoder decoder = Charset.forName(codePage.charsetName).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.allocate(1);
+        CharBuffer out = CharBuffer.allocate(2);
+        for (int b = 0x80; b < 0x100; b++) {
+            in.clear();
+            in.put((byte) b).flip();
+            out.clear();
+            decoder.reset();
+            if (decoder.decode(in, out, true).isError() || out.position() != 1) {
+                continue;
+            }
+            char c = out.get(0);
+            if (c < 0x80) {
+                continue;
+            }
+            if (table[c >>> 8] == null) {
+                table[c >>> 8] = new byte[256];
+            }
+            if (table[c >>> 8][c & 0xFF] == 0) {
+                table[c >>> 8][c & 0xFF] = (byte) b;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Gets the code pages of this encoder able to encode one char.
+     *
+     * @param c character to be checked
+     * @return bit mask, bit i set for the code page i, zero when none
+     */
+    private int maskOf(char c) {
+        int[] page = masks[c >>> 8];
+        return page == null ? 0 : page[c & 0xFF];
+    }
+
+    /**
+     * Forgets the code page active on the printer, next non ASCII character
+     * selects the code page again. Must be called after the printer is
+     * initialized.
+     */
+    public void reset() {
+        current = -1;
+    }
+
+    /**
+     * Encodes text, with code page switch commands of the printer inline.
+     *
+     * @param text content to be encoded
+     * @return encoded bytes
+     */
+    public byte[] encode(String text) {
+        bytes.reset();
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes.write(c);
+                continue;
+            }
+            int mask = maskOf(c);
+            if (mask == 0) {
+                bytes.write('?');
+                continue;
+            }
+            if (current < 0 || (mask & (1 << current)) == 0) {
+                int candidates = mask;
+                for (int j = i + 1; j < len; j++) {
+                    char next = text.charAt(j);
+                    if (next < 0x80) {
+                        continue;
+                    }
+                    int nextMask = maskOf(next);
+                    if (nextMask == 0) {
+                        continue;
+                    }
+                    if ((candidates & nextMask) == 0) {
+                        break;
+                    }
+                    candidates &= nextMask;
+                }
+                current = Integer.numberOfTrailingZeros(candidates);
+                byte[] command = dialect.getCodePageCommands(codePages[current]);
+                bytes.write(command, 0, command.length);
+            }
+            bytes.write(CHAR_TO_BYTE[codePages[current].ordinal()][c >>> 8][c & 0xFF]);
+        }
+        return bytes.toByteArray();
+    }
+
+}
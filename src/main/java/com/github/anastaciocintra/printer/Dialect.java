@@ -0,0 +1,47 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+/**
+ * Command set understood by one printer.
+ */
+public enum Dialect {
+    ESC_POS,
+    STAR_PRNT;
+
+    /**
+     * Gets the command to select one character code table.
+     *
+     * @param codePage code table to be selected
+     * @return the command as byte array
+     */
+    public byte[] getCodePageCommands(CodePage codePage) {
+        if (this == STAR_PRNT) {
+            return new byte[]{Commands.ESC, Commands.GS, 't', (byte) codePage.starPrntValue};
+        }
+        return new byte[]{Commands.ESC, 't', (byte) codePage.escPosValue};
+    }
+
+    /**
+     * Gets the command header to print one raster bit image, followed by
+     * <code>bytesPerRow * rows</code> bytes of image data. The most
+     * significant bit of each byte is the leftmost dot and bit 1 prints one
+     * black dot.
+     *
+     * @param bytesPerRow number of bytes of each row, 8 dots per byte
+     * @param rows number of rows of the image
+     * @return the command header as byte array
+     */
+    public byte[] getRasterCommands(int bytesPerRow, int rows) {
+        if (this == STAR_PRNT) {
+            return new byte[]{Commands.ESC, Commands.GS, 'S', 1,
+                (byte) bytesPerRow, (byte) (bytesPerRow >> 8),
+                (byte) rows, (byte) (rows >> 8), 0};
+        }
+        return new byte[]{Commands.GS, 'v', '0', 0,
+            (byte) bytesPerRow, (byte) (bytesPerRow >> 8),
+            (byte) rows, (byte) (rows >> 8)};
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of encoded strings.
+ * <p>
+ * Item names, headers and boilerplate lines repeat on every receipt. The
+ * cache keeps their encoded bytes per charset, so the encoding is paid only
+ * once. When the cache is full the least recently inserted entry not used
+ * since the last check is evicted (clock algorithm). Strings longer than the
+ * maximum length are encoded without being cached.
+ * <p>
+ * One instance can be shared by many printers and threads. Hit and miss
+ * counters show whether the cache pays off on the actual workload.
+ *
+ * @see Printer#setEncodedStringCache(EncodedStringCache)
+ */
+public class EncodedStringCache {
+
+    private static final class Entry {
+        final Charset charset;
+        final String text;
+        final byte[] bytes;
+        volatile boolean referenced;
+
+        Entry(Charset charset, String text, byte[] bytes) {
+            this.charset = charset;
+            this.text = text;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ConcurrentHashMap<Charset, ConcurrentHashMap<String, Entry>> maps = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxEntries;
+    private int maxStringLength = 256;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates one instance of EncodedStringCache.
+     *
+     * @param maxEntries maximum number of strings kept, for all charsets
+     */
+    public EncodedStringCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Sets the length of the longest string to be cached. Default is 256.
+     *
+     * @param maxStringLength number of chars
+     * @return this object
+     */
+    public EncodedStringCache setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+        return this;
+    }
+
+    /**
+     * Gets the text encoded with the charset.
+     * <p>
+     * The returned array can be shared with other callers and must not be
+     * modified.
+     *
+     * @param text content to be encoded
+     * @param charset charset used to encode
+     * @return encoded bytes
+     */
+    public byte[] getBytes(String text, Charset charset) {
+        if (text.length() > maxStringLength) {
+            skipped.increment();
+            return text.getBytes(charset);
+        }
+        ConcurrentHashMap<String, Entry> map = maps.get(charset);
+        if (map == null) {
+            map = maps.computeIfAbsent(charset, (Charset c) -> new ConcurrentHashMap<>());
+        }
+        Entry entry = map.get(text);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry.bytes;
+        }
+        misses.increment();
+        entry = new Entry(charset, text, text.getBytes(charset));
+        Entry previous = map.putIfAbsent(text, entry);
+        if (previous != null) {
+            return previous.bytes;
+        }
+        clock.offer(entry);
+        if (size.incrementAndGet() > maxEntries) {
+            evict();
+        }
+        return entry.bytes;
+    }
+
+    private void evict() {
+        while (size.get() > maxEntries) {
+            Entry candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                clock.offer(candidate);
+                continue;
+            }
+            ConcurrentHashMap<String, Entry> map = maps.get(candidate.charset);
+            if (map != null && map.remove(candidate.text, candidate)) {
+                size.decrementAndGet();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries. Counters are kept.
+     */
+    public void clear() {
+        maps.clear();
+        clock.clear();
+        size.set(0);
+    }
+
+    /**
+     * Gets number of strings in the cache.
+     *
+     * @return actual value
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Gets number of lookups found in the cache.
+     *
+     * @return actual value
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets number of lookups not found in the cache.
+     *
+     * @return actual value
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets number of strings not cached because they are too long.
+     *
+     * @return actual value
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Gets number of entries evicted to keep the cache bounded.
+     *
+     * @return actual value
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of cacheable lookups found in the cache.
+     *
+     * @return value between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+}
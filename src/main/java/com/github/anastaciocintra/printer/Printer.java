@@ -8,7 +8,14 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import com.github.anastaciocintra.output.ByteBufferPool;
 
 /**
  * Write some usual commands to the OutputStream.
@@ -31,6 +38,11 @@ public abstract class Printer implements Closeable, Flushable, Commands {
     private OutputStream outputStream;
     private Charset defaultCharset;
     private Style defaultStyle;
+    private CodePageEncoder codePageEncoder;
+    private EncodedStringCache encodedStringCache;
+    private ByteBufferPool bufferPool = ByteBufferPool.getDefaultHeap();
+    // encoder of defaultCharset, created on first use
+    private CharsetEncoder encoder;
 
     /**
      * Creates an instance based on outputStream.
@@ -115,6 +127,7 @@ public abstract class Printer implements Closeable, Flushable, Commands {
      */
     public Printer setDefaultCharset(Charset defaultCharset) {
         this.defaultCharset = defaultCharset;
+        this.encoder = null;
         return this;
     }
 
@@ -127,6 +140,79 @@ public abstract class Printer implements Closeable, Flushable, Commands {
         return defaultCharset;
     }
 
+    /**
+     * Sets encoder to write text using code pages selected per character.
+     * <p>
+     * When set, the encoder is used instead of the default charset. Chinese
+     * character mode must not be active on the printer, otherwise the code
+     * page bytes are interpreted as double-byte characters.
+     *
+     * @param codePageEncoder encoder used only by this printer, or null to
+     * use the default charset.
+     * @return this object
+     * @see #setDefaultCharset(Charset)
+     */
+    public Printer setCodePageEncoder(CodePageEncoder codePageEncoder) {
+        this.codePageEncoder = codePageEncoder;
+        return this;
+    }
+
+    /**
+     * Gets actual code page encoder.
+     *
+     * @return actual value, null when the default charset is used
+     */
+    public CodePageEncoder getCodePageEncoder() {
+        return codePageEncoder;
+    }
+
+    /**
+     * Sets cache of encoded strings used on writes with the default charset.
+     *
+     * @param encodedStringCache cache, can be shared with other printers, or
+     * null to encode every write.
+     * @return this object
+     */
+    public Printer setEncodedStringCache(EncodedStringCache encodedStringCache) {
+        this.encodedStringCache = encodedStringCache;
+        return this;
+    }
+
+    /**
+     * Gets actual cache of encoded strings.
+     *
+     * @return actual value, null when there is no cache
+     */
+    public EncodedStringCache getEncodedStringCache() {
+        return encodedStringCache;
+    }
+
+    /**
+     * Sets pool of buffers used to encode text with the default charset.
+     * Default is the shared heap pool.
+     *
+     * @param bufferPool pool of heap buffers, or null to encode each write on
+     * a new array
+     * @return this object
+     * @see ByteBufferPool#getDefaultHeap()
+     */
+    public Printer setBufferPool(ByteBufferPool bufferPool) {
+        if (bufferPool != null && bufferPool.isDirect()) {
+            throw new IllegalArgumentException("bufferPool must supply heap buffers");
+        }
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Gets actual pool of buffers.
+     *
+     * @return actual value, null when no pool is used
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     /**
      * Resets printer to default state.
      *
@@ -136,6 +222,9 @@ public abstract class Printer implements Closeable, Flushable, Commands {
     public Printer reset() throws IOException {
         defaultStyle.reset();
         initialize();
+        if (codePageEncoder != null) {
+            codePageEncoder.reset();
+        }
         setLineSpacing();
         setChineseCharacterSupport();
         setExternalDrawerPulse();
@@ -144,6 +233,9 @@ public abstract class Printer implements Closeable, Flushable, Commands {
 
     /**
      * Sends initialize command to printer.
+     * <p>
+     * The printer goes back to its default code table, so implementations
+     * also reset the code page encoder.
      *
      * @return this object
      * @throws IOException if an I/O error occurs
@@ -259,10 +351,45 @@ public abstract class Printer implements Closeable, Flushable, Commands {
      */
     public Printer write(Style style, String text) throws IOException {
         write(getStyleCommands(style));
-        write(text.getBytes(defaultCharset));
+        if (codePageEncoder != null) {
+            write(codePageEncoder.encode(text));
+        } else if (encodedStringCache != null) {
+            write(encodedStringCache.getBytes(text, defaultCharset));
+        } else if (bufferPool != null) {
+            writeEncoded(text);
+        } else {
+            write(text.getBytes(defaultCharset));
+        }
         return this;
     }
 
+    /**
+     * Encodes the text on one buffer of the pool, the bytes are the same of
+     * <code>text.getBytes(defaultCharset)</code>.
+     */
+    private void writeEncoded(String text) throws IOException {
+        if (encoder == null) {
+            encoder = defaultCharset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        ByteBuffer buffer = bufferPool.acquire((int) Math.ceil(text.length() * encoder.maxBytesPerChar()));
+        try {
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(text), buffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(buffer);
+            }
+            if (result.isOverflow()) {
+                write(text.getBytes(defaultCharset));
+            } else {
+                write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
     /**
      * Calls write with default style.
      *
@@ -0,0 +1,205 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes long text reports encoding the lines in parallel.
+ * <p>
+ * The lines are split in chunks and each chunk is encoded (text and line
+ * feed) on a fork-join pool; the style commands are taken from the printer on
+ * the calling thread. The chunks are written with <code>printer.write</code>
+ * in order, each one as soon as it and all the chunks before it are ready, so
+ * the first bytes leave while the rest of the report is still being encoded.
+ * The number of chunks encoded ahead is bounded, so the memory used does not
+ * grow with the report.
+ * <p>
+ * The bytes are the same as calling <code>writeLF(style, line)</code> for each
+ * line. <code>CodePageEncoder</code> keeps the selected code page from one
+ * line to the next, so printers with one code page encoder are written
+ * serially, and so are printers that override <code>write(Style, String)</code>
+ * or <code>writeLF(Style, String)</code>. The styles must not be changed while
+ * the report is written.
+ * <pre>
+ * ReportWriter report = new ReportWriter(printer);
+ * report.writeLines(new Style(), lines);
+ * </pre>
+ */
+public class ReportWriter {
+
+    private final Printer printer;
+    private final ForkJoinPool pool;
+    private int chunkLines = 256;
+    private int maxChunksAhead;
+
+    /**
+     * creates one instance of ReportWriter.
+     *
+     * @param printer printer that receives the report
+     * @param pool pool that encodes the chunks
+     */
+    public ReportWriter(Printer printer, ForkJoinPool pool) {
+        this.printer = printer;
+        this.pool = pool;
+        this.maxChunksAhead = pool.getParallelism() * 2;
+    }
+
+    /**
+     * creates one instance of ReportWriter using the common pool.
+     *
+     * @param printer printer that receives the report
+     * @see ForkJoinPool#commonPool()
+     */
+    public ReportWriter(Printer printer) {
+        this(printer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sets number of lines of each chunk. Default is 256.
+     *
+     * @param chunkLines number of lines
+     * @return this object
+     */
+    public ReportWriter setChunkLines(int chunkLines) {
+        if (chunkLines < 1) {
+            throw new IllegalArgumentException("chunkLines must be positive");
+        }
+        this.chunkLines = chunkLines;
+        return this;
+    }
+
+    /**
+     * Sets how many chunks can be encoded ahead of the one being written.
+     * Default is twice the parallelism of the pool.
+     *
+     * @param maxChunksAhead number of chunks
+     * @return this object
+     */
+    public ReportWriter setMaxChunksAhead(int maxChunksAhead) {
+        if (maxChunksAhead < 1) {
+            throw new IllegalArgumentException("maxChunksAhead must be positive");
+        }
+        this.maxChunksAhead = maxChunksAhead;
+        return this;
+    }
+
+    /**
+     * Writes the lines with the same style.
+     *
+     * @param style text style to be used
+     * @param lines the lines of the report
+     * @return this object
+     * @exception IOException if an I/O error occurs
+     */
+    public ReportWriter writeLines(Style style, List<String> lines) throws IOException {
+        return writeLines(lines.size(), i -> style, lines::get);
+    }
+
+    /**
+     * Writes the lines, each one with its style.
+     *
+     * @param styles text style of each line
+     * @param lines the lines of the report, same size of styles
+     * @return this object
+     * @exception IOException if an I/O error occurs
+     */
+    public ReportWriter writeLines(List<Style> styles, List<String> lines) throws IOException {
+        if (styles.size() != lines.size()) {
+            throw new IllegalArgumentException("styles and lines must have the same size");
+        }
+        return writeLines(lines.size(), styles::get, lines::get);
+    }
+
+    private interface Source<T> {
+        T get(int index);
+    }
+
+    private ReportWriter writeLines(int size, Source<Style> styles, Source<String> lines) throws IOException {
+        if (printer.getCodePageEncoder() != null || overridesWrite()) {
+            for (int i = 0; i < size; i++) {
+                printer.writeLF(styles.get(i), lines.get(i));
+            }
+            return this;
+        }
+        Map<Style, byte[]> styleCommands = new IdentityHashMap<>();
+        Charset charset = printer.getDefaultCharset();
+        EncodedStringCache cache = printer.getEncodedStringCache();
+        if (size <= chunkLines) {
+            printer.write(encode(getStyleCommands(styleCommands, styles, 0, size), lines, 0, charset, cache));
+            return this;
+        }
+        ArrayDeque<ForkJoinTask<byte[]>> ahead = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < size || !ahead.isEmpty()) {
+                while (next < size && ahead.size() < maxChunksAhead) {
+                    int from = next;
+                    int to = Math.min(size, from + chunkLines);
+                    byte[][] chunkStyles = getStyleCommands(styleCommands, styles, from, to);
+                    ahead.offer(pool.submit(() -> encode(chunkStyles, lines, from, charset, cache)));
+                    next = to;
+                }
+                printer.write(ahead.poll().join());
+            }
+        } finally {
+            for (ForkJoinTask<byte[]> task : ahead) {
+                task.cancel(false);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Checks if the printer changes how one styled line is written.
+     */
+    private boolean overridesWrite() {
+        try {
+            Class<?> type = printer.getClass();
+            return type.getMethod("write", Style.class, String.class).getDeclaringClass() != Printer.class
+                    || type.getMethod("writeLF", Style.class, String.class).getDeclaringClass() != Printer.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Gets the style commands of the lines from index <code>from</code>
+     * (inclusive) to <code>to</code> (exclusive), on the calling thread.
+     */
+    private byte[][] getStyleCommands(Map<Style, byte[]> known, Source<Style> styles, int from, int to) {
+        byte[][] commands = new byte[to - from][];
+        for (int i = from; i < to; i++) {
+            commands[i - from] = known.computeIfAbsent(styles.get(i), printer::getStyleCommands);
+        }
+        return commands;
+    }
+
+    /**
+     * Encodes the lines from index <code>from</code>, one for each style
+     * commands.
+     */
+    private static byte[] encode(byte[][] styleCommands, Source<String> lines, int from,
+            Charset charset, EncodedStringCache cache) {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(styleCommands.length * 64);
+        for (int i = 0; i < styleCommands.length; i++) {
+            String text = lines.get(from + i);
+            byte[] bytes = cache != null ? cache.getBytes(text, charset) : text.getBytes(charset);
+            chunk.write(styleCommands[i], 0, styleCommands[i].length);
+            chunk.write(bytes, 0, bytes.length);
+            chunk.write(Commands.LF);
+        }
+        return chunk.toByteArray();
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Prints long images band by band.
+ * <p>
+ * The source image is decoded once, from top to bottom. Rows are taken as
+ * the reader delivers them and, as soon as one band of rows is complete, it
+ * is converted to black and white with Floyd-Steinberg error diffusion,
+ * packed and written to the printer as one raster command. The diffusion
+ * error is carried across bands, so band boundaries are not visible.
+ * <p>
+ * The image is always decoded with one single read. Sequential formats, like
+ * PNG and baseline JPEG, print each band while the rest of the image is still
+ * being decoded; interlaced, progressive and bottom-up images (like BMP) are
+ * printed after the read. The whole decoded image is kept in memory, after
+ * the subsampling. Source regions are not used: the BMP reader of Java 8
+ * returns wrong rows when one reader reads more than one region.
+ * <p>
+ * Images wider than the printable width are reduced by integer subsampling.
+ *
+ * @see Dialect#getRasterCommands(int, int)
+ */
+public class StreamingRasterWriter {
+
+    /**
+     * Dithers rows and writes them as raster bands, keeping the diffusion
+     * error between calls.
+     */
+    private final class Rasterizer {
+
+        final Printer printer;
+        final int width;
+        final int bytesPerRow;
+        final int[] rgb;
+        final byte[] bits;
+        int[] error;
+        int[] nextError;
+
+        Rasterizer(Printer printer, int width) {
+            this.printer = printer;
+            this.width = width;
+            this.bytesPerRow = (width + 7) / 8;
+            this.rgb = new int[width];
+            this.bits = new byte[bytesPerRow * bandHeight];
+            this.error = new int[width + 2];
+            this.nextError = new int[width + 2];
+        }
+
+        /**
+         * Writes the rows from <code>from</code> (inclusive) to
+         * <code>to</code> (exclusive) of the image, in bands.
+         */
+        void writeRows(BufferedImage image, int from, int to) throws IOException {
+            int imageWidth = Math.min(width, image.getWidth());
+            for (int y = from; y < to; y += bandHeight) {
+                int rows = Math.min(bandHeight, to - y);
+                Arrays.fill(bits, 0, bytesPerRow * rows, (byte) 0);
+                for (int row = 0; row < rows; row++) {
+                    image.getRGB(0, y + row, imageWidth, 1, rgb, 0, width);
+                    ditherRow(row * bytesPerRow, imageWidth);
+                }
+                printer.write(dialect.getRasterCommands(bytesPerRow, rows));
+                printer.write(bits, 0, bytesPerRow * rows);
+                printer.flush();
+            }
+        }
+
+        private void ditherRow(int offset, int rowWidth) {
+            for (int x = 0; x < rowWidth; x++) {
+                int value = luminance(rgb[x]) + error[x + 1] / 16;
+                int black = value < 128 ? 1 : 0;
+                int diff = black == 1 ? value : value - 255;
+                error[x + 2] += diff * 7;
+                nextError[x] += diff * 3;
+                nextError[x + 1] += diff * 5;
+                nextError[x + 2] += diff;
+                if (black == 1) {
+                    bits[offset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+            }
+            int[] swap = error;
+            error = nextError;
+            nextError = swap;
+            Arrays.fill(nextError, 0);
+        }
+    }
+
+    /**
+     * Prints the complete bands while one single read decodes the image.
+     */
+    private final class SequentialReader implements IIOReadUpdateListener {
+
+        final Rasterizer rasterizer;
+        int decodedRows;
+        int writtenRows;
+        boolean streaming = true;
+        IOException failure;
+
+        SequentialReader(Rasterizer rasterizer) {
+            this.rasterizer = rasterizer;
+        }
+
+        BufferedImage read(ImageReader reader, ImageReadParam param) throws IOException {
+            reader.addIIOReadUpdateListener(this);
+            BufferedImage image;
+            try {
+                image = reader.read(0, param);
+            } finally {
+                reader.removeIIOReadUpdateListener(this);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return image;
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY,
+                int width, int height, int periodX, int periodY, int[] bands) {
+            if (!streaming || failure != null) {
+                return;
+            }
+            // only rows delivered in order, complete and once are final
+            if (minX != 0 || periodX != 1 || periodY != 1 || minY > decodedRows
+                    || width < Math.min(rasterizer.width, theImage.getWidth())) {
+                streaming = false;
+                return;
+            }
+            decodedRows = Math.max(decodedRows, minY + height);
+            int completeRows = writtenRows + (decodedRows - writtenRows) / bandHeight * bandHeight;
+            if (completeRows == writtenRows) {
+                return;
+            }
+            try {
+                rasterizer.writeRows(theImage, writtenRows, completeRows);
+                writtenRows = completeRows;
+            } catch (IOException ex) {
+                failure = ex;
+                source.abort();
+            }
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass,
+                int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+            if (pass > 0) {
+                streaming = false;
+            }
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass,
+                int minPass, int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+                int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        }
+    }
+
+    private final Dialect dialect;
+    private final int maxWidthDots;
+    private int bandHeight = 64;
+
+    /**
+     * Creates one instance of StreamingRasterWriter.
+     *
+     * @param dialect command set of the printer, selects the raster command
+     * @param maxWidthDots printable width, usually 576 for 80mm paper and
+     * 384 for 58mm paper.
+     */
+    public StreamingRasterWriter(Dialect dialect, int maxWidthDots) {
+        if (maxWidthDots < 1) {
+            throw new IllegalArgumentException("maxWidthDots must be positive");
+        }
+        this.dialect = dialect;
+        this.maxWidthDots = maxWidthDots;
+    }
+
+    /**
+     * Sets the number of rows of each band. Default is 64.
+     *
+     * @param bandHeight rows per band
+     * @return this object
+     */
+    public StreamingRasterWriter setBandHeight(int bandHeight) {
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("bandHeight must be positive");
+        }
+        this.bandHeight = bandHeight;
+        return this;
+    }
+
+    /**
+     * Prints one image file.
+     *
+     * @param printer destination of the raster commands
+     * @param file image file, in any format supported by ImageIO
+     * @exception IOException if an I/O error occurs or the format is not
+     * supported
+     */
+    public void write(Printer printer, File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            write(printer, input);
+        }
+    }
+
+    /**
+     * Prints one image read from a stream.
+     *
+     * @param printer destination of the raster commands
+     * @param inputStream image data, in any format supported by ImageIO
+     * @exception IOException if an I/O error occurs or the format is not
+     * supported
+     */
+    public void write(Printer printer, InputStream inputStream) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputStream)) {
+            write(printer, input);
+        }
+    }
+
+    private void write(Printer printer, ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("image input cannot be created");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("image format is not supported");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, false);
+            write(printer, reader);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Prints the first image of the reader.
+     *
+     * @param printer destination of the raster commands
+     * @param reader reader with the input already set, metadata must not be
+     * ignored
+     * @exception IOException if an I/O error occurs
+     */
+    public void write(Printer printer, ImageReader reader) throws IOException {
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+        int step = (sourceWidth + maxWidthDots - 1) / maxWidthDots;
+        int width = (sourceWidth + step - 1) / step;
+        int height = (sourceHeight + step - 1) / step;
+
+        Rasterizer rasterizer = new Rasterizer(printer, width);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+
+        int writtenRows = 0;
+        BufferedImage image;
+        if (isSequential(reader)) {
+            SequentialReader sequential = new SequentialReader(rasterizer);
+            image = sequential.read(reader, param);
+            writtenRows = sequential.writtenRows;
+        } else {
+            image = reader.read(0, param);
+        }
+        rasterizer.writeRows(image, writtenRows, Math.min(height, image.getHeight()));
+    }
+
+    /**
+     * Checks on the standard metadata whether the image is decoded in one
+     * single scan, from top to bottom.
+     */
+    private static boolean isSequential(ImageReader reader) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return false;
+        }
+        Node root = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!"Compression".equals(node.getNodeName())) {
+                continue;
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if ("NumProgressiveScans".equals(child.getNodeName())) {
+                    return "1".equals(((Element) child).getAttribute("value"));
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int luminance(int argb) {
+        int alpha = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int gray = (r * 299 + g * 587 + b * 114) / 1000;
+        return (gray * alpha + 255 * (255 - alpha)) / 255;
+    }
+
+}
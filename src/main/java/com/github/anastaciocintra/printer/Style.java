@@ -4,7 +4,6 @@
  */
 package com.github.anastaciocintra.printer;
 
-import java.io.ByteArrayOutputStream;
 import com.github.anastaciocintra.printer.impl.EscPosStyleConfig;
 
 /**
@@ -192,6 +191,42 @@ public class Style implements Commands {
         return this;
     }
 
+    /**
+     * Gets character font name.
+     *
+     * @return actual value
+     */
+    public FontName getFontName() {
+        return fontName;
+    }
+
+    /**
+     * Gets font width.
+     *
+     * @return actual value
+     */
+    public FontSize getFontWidth() {
+        return fontWidth;
+    }
+
+    /**
+     * Gets font height.
+     *
+     * @return actual value
+     */
+    public FontSize getFontHeight() {
+        return fontHeight;
+    }
+
+    /**
+     * Gets Justification for text.
+     *
+     * @return actual value
+     */
+    public Justification getJustification() {
+        return justification;
+    }
+
     /**
      * TODO move this method to the impl class
      *
@@ -200,37 +235,15 @@ public class Style implements Commands {
      * @return ESC/POS commands as byte array
      */
     public byte[] toEscPosCommands(EscPosStyleConfig styleConfig) {
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
-        bytes.write(ESC);
-        bytes.write('M');
-        bytes.write(fontName.value);
-
-        bytes.write(GS);
-        bytes.write('!');
-        bytes.write(fontWidth.value << 4 | fontHeight.value);
-
-        bytes.write(ESC);
-        bytes.write('3');
-        bytes.write((fontHeight.value + 1) * styleConfig.getLineSpacingDot() - 1);
-
-        bytes.write(ESC);
-        bytes.write('E');
-        bytes.write(bold ? 1 : 0);
-
-        bytes.write(ESC);
-        bytes.write('-');
-        bytes.write(underline.value);
-
-        bytes.write(ESC);
-        bytes.write('a');
-        bytes.write(justification.value);
-
-        bytes.write(GS);
-        bytes.write('B');
-        bytes.write(colorMode.value);
-
-        return bytes.toByteArray();
+        return new byte[]{
+            ESC, 'M', (byte) fontName.value,
+            GS, '!', (byte) (fontWidth.value << 4 | fontHeight.value),
+            ESC, '3', (byte) ((fontHeight.value + 1) * styleConfig.getLineSpacingDot() - 1),
+            ESC, 'E', (byte) (bold ? 1 : 0),
+            ESC, '-', (byte) underline.value,
+            ESC, 'a', (byte) justification.value,
+            GS, 'B', (byte) colorMode.value
+        };
     }
 
     /**
@@ -239,34 +252,14 @@ public class Style implements Commands {
      * @return StarPRNT commands as byte array
      */
     public byte[] toStarPrntCommands() {
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
-        bytes.write(ESC);
-        bytes.write(RS);
-        bytes.write('F');
-        bytes.write(fontName.value);
-
-        bytes.write(ESC);
-        bytes.write('i');
-        bytes.write(fontHeight.value);
-        bytes.write(fontWidth.value);
-
-        bytes.write(ESC);
-        bytes.write(bold ? 'E' : 'F');
-
-        bytes.write(ESC);
-        bytes.write('-');
-        bytes.write(underline.value > 0 ? 1 : 0);
-
-        bytes.write(ESC);
-        bytes.write(GS);
-        bytes.write('a');
-        bytes.write(justification.value);
-
-        bytes.write(ESC);
-        bytes.write(colorMode.value == 1 ? '4' : '5');
-
-        return bytes.toByteArray();
+        return new byte[]{
+            ESC, RS, 'F', (byte) fontName.value,
+            ESC, 'i', (byte) fontHeight.value, (byte) fontWidth.value,
+            ESC, (byte) (bold ? 'E' : 'F'),
+            ESC, '-', (byte) (underline.value > 0 ? 1 : 0),
+            ESC, GS, 'a', (byte) justification.value,
+            ESC, (byte) (colorMode.value == 1 ? '4' : '5')
+        };
     }
 
 }
@@ -0,0 +1,337 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out text in columns, like item / qty / price lines of one receipt.
+ * <p>
+ * The number of characters per line is computed from the paper width in dots
+ * and the font metrics of the style used on each row. Columns can have fixed
+ * width or share the remaining space proportionally. Long texts are wrapped
+ * on word boundaries and double-width characters (CJK) are measured with
+ * <code>CharWidth</code>.
+ * <pre>
+ * TableLayout table = new TableLayout(576)
+ *         .addColumn(TableLayout.Column.proportional(1))
+ *         .addColumn(TableLayout.Column.fixed(4).setAlignment(Style.Justification.Right))
+ *         .addColumn(TableLayout.Column.fixed(9).setAlignment(Style.Justification.Right));
+ * table.writeRow(printer, style, "Coffee", "2", "5.00");
+ * </pre>
+ * Like <code>Printer</code>, instances are not thread-safe.
+ *
+ * @see CharWidth
+ */
+public class TableLayout {
+
+    /**
+     * One column of the table.
+     */
+    public static class Column {
+
+        private final int width;
+        private final int weight;
+        private Style.Justification alignment = Style.Justification.Left_Default;
+
+        private Column(int width, int weight) {
+            this.width = width;
+            this.weight = weight;
+        }
+
+        /**
+         * Creates one column with fixed width.
+         *
+         * @param width number of half-width characters
+         * @return new column
+         */
+        public static Column fixed(int width) {
+            return new Column(width, 0);
+        }
+
+        /**
+         * Creates one column sharing the remaining width of the line.
+         *
+         * @param weight proportion of the remaining width
+         * @return new column
+         */
+        public static Column proportional(int weight) {
+            return new Column(0, weight);
+        }
+
+        /**
+         * Sets alignment of the text inside the column.
+         *
+         * @param alignment text alignment
+         * @return this object
+         */
+        public Column setAlignment(Style.Justification alignment) {
+            this.alignment = alignment;
+            return this;
+        }
+
+        /**
+         * Gets alignment of the text inside the column.
+         *
+         * @return actual value
+         */
+        public Style.Justification getAlignment() {
+            return alignment;
+        }
+    }
+
+    private final int paperWidthDots;
+    private final int[] fontWidthDots = {12, 9, 9};
+    private final List<Column> columns = new ArrayList<>();
+    private int columnSpacing = 1;
+
+    private int resolvedLineWidth = -1;
+    private int[] resolvedWidths;
+
+    /**
+     * Creates one table layout.
+     *
+     * @param paperWidthDots printable width, usually 576 for 80mm paper and
+     * 384 for 58mm paper.
+     */
+    public TableLayout(int paperWidthDots) {
+        this.paperWidthDots = paperWidthDots;
+    }
+
+    /**
+     * Adds one column on the right of the existing columns.
+     *
+     * @param column column to be added
+     * @return this object
+     */
+    public TableLayout addColumn(Column column) {
+        columns.add(column);
+        resolvedLineWidth = -1;
+        return this;
+    }
+
+    /**
+     * Sets number of blank characters between columns. Default is 1.
+     *
+     * @param columnSpacing number of half-width characters
+     * @return this object
+     */
+    public TableLayout setColumnSpacing(int columnSpacing) {
+        this.columnSpacing = columnSpacing;
+        resolvedLineWidth = -1;
+        return this;
+    }
+
+    /**
+     * Sets the width of one character of the font, before the font size
+     * multiplier. Defaults are 12 dots to Font A and 9 dots to Font B and C.
+     *
+     * @param fontName font to be configured
+     * @param dots width of one half-width character
+     * @return this object
+     */
+    public TableLayout setFontWidthDots(Style.FontName fontName, int dots) {
+        fontWidthDots[fontName.ordinal()] = dots;
+        return this;
+    }
+
+    /**
+     * Gets number of half-width characters in one line with the style.
+     *
+     * @param style text style to be used
+     * @return characters per line
+     */
+    public int getLineWidth(Style style) {
+        int charDots = fontWidthDots[style.getFontName().ordinal()] * (style.getFontWidth().value + 1);
+        return paperWidthDots / charDots;
+    }
+
+    /**
+     * Writes one row, wrapping texts on as many lines as needed.
+     *
+     * @param printer destination of the lines
+     * @param style text style to be used
+     * @param cells one text for each column, missing texts are left blank
+     * @return this object
+     * @exception IOException if an I/O error occurs
+     */
+    public TableLayout writeRow(Printer printer, Style style, String... cells) throws IOException {
+        int[] widths = resolveWidths(getLineWidth(style));
+        int columnCount = widths.length;
+        int[] positions = new int[columnCount];
+        int[] lineWidth = new int[1];
+        StringBuilder line = new StringBuilder(resolvedLineWidth);
+        boolean pending;
+        do {
+            line.setLength(0);
+            pending = false;
+            for (int col = 0; col < columnCount; col++) {
+                if (col > 0) {
+                    appendSpaces(line, columnSpacing);
+                }
+                String text = col < cells.length && cells[col] != null ? cells[col] : "";
+                int start = positions[col];
+                int end = start;
+                lineWidth[0] = 0;
+                if (start < text.length()) {
+                    end = nextBreak(text, start, widths[col], lineWidth);
+                    positions[col] = skipBreak(text, end);
+                }
+                int free = Math.max(0, widths[col] - lineWidth[0]);
+                int before = 0;
+                switch (columns.get(col).alignment) {
+                    case Right:
+                        before = free;
+                        break;
+                    case Center:
+                        before = free / 2;
+                        break;
+                    default:
+                        break;
+                }
+                appendSpaces(line, before);
+                line.append(text, start, end);
+                if (col < columnCount - 1) {
+                    appendSpaces(line, free - before);
+                }
+                if (positions[col] < text.length()) {
+                    pending = true;
+                }
+            }
+            printer.writeLF(style, line.toString());
+        } while (pending);
+        return this;
+    }
+
+    /**
+     * Writes one line filled with the same character, like a separator rule.
+     *
+     * @param printer destination of the line
+     * @param style text style to be used
+     * @param c character to fill the line
+     * @return this object
+     * @exception IOException if an I/O error occurs
+     */
+    public TableLayout writeSeparator(Printer printer, Style style, char c) throws IOException {
+        int count = getLineWidth(style) / Math.max(1, CharWidth.width(c));
+        StringBuilder line = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            line.append(c);
+        }
+        printer.writeLF(style, line.toString());
+        return this;
+    }
+
+    private int[] resolveWidths(int lineWidth) {
+        if (lineWidth == resolvedLineWidth) {
+            return resolvedWidths;
+        }
+        int count = columns.size();
+        int[] widths = new int[count];
+        int free = lineWidth - Math.max(0, count - 1) * columnSpacing;
+        int totalWeight = 0;
+        int lastProportional = -1;
+        for (int i = 0; i < count; i++) {
+            Column column = columns.get(i);
+            if (column.weight > 0) {
+                totalWeight += column.weight;
+                lastProportional = i;
+            } else {
+                widths[i] = column.width;
+                free -= column.width;
+            }
+        }
+        free = Math.max(0, free);
+        int remaining = free;
+        for (int i = 0; i < count; i++) {
+            Column column = columns.get(i);
+            if (column.weight > 0) {
+                widths[i] = free * column.weight / totalWeight;
+                remaining -= widths[i];
+            }
+        }
+        if (lastProportional >= 0) {
+            widths[lastProportional] += remaining;
+        }
+        resolvedWidths = widths;
+        resolvedLineWidth = lineWidth;
+        return widths;
+    }
+
+    /**
+     * Finds the end of the next line of one cell.
+     *
+     * @param text cell text
+     * @param start first char of the line
+     * @param width column width
+     * @param lineWidth receives the printed width of the line
+     * @return end index (exclusive) of the line
+     */
+    private static int nextBreak(String text, int start, int width, int[] lineWidth) {
+        int len = text.length();
+        int used = 0;
+        int wordEnd = -1;
+        int wordEndWidth = 0;
+        int contentEnd = start;
+        int contentWidth = 0;
+        int i = start;
+        while (i < len) {
+            int cp = text.codePointAt(i);
+            if (cp == '\n') {
+                break;
+            }
+            int charCount = Character.charCount(cp);
+            int cw = CharWidth.width(cp);
+            if (used + cw > width) {
+                if (cp == ' ') {
+                    break;
+                }
+                if (wordEnd > start) {
+                    lineWidth[0] = wordEndWidth;
+                    return wordEnd;
+                }
+                if (i == start) {
+                    lineWidth[0] = cw;
+                    return i + charCount;
+                }
+                lineWidth[0] = used;
+                return i;
+            }
+            used += cw;
+            if (cp == ' ') {
+                if (contentEnd > start) {
+                    wordEnd = contentEnd;
+                    wordEndWidth = contentWidth;
+                }
+            } else {
+                contentEnd = i + charCount;
+                contentWidth = used;
+            }
+            i += charCount;
+        }
+        lineWidth[0] = contentWidth;
+        return contentEnd;
+    }
+
+    private static int skipBreak(String text, int pos) {
+        int len = text.length();
+        while (pos < len && text.charAt(pos) == ' ') {
+            pos++;
+        }
+        if (pos < len && text.charAt(pos) == '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static void appendSpaces(StringBuilder line, int count) {
+        for (int i = 0; i < count; i++) {
+            line.append(' ');
+        }
+    }
+
+}
@@ -4,9 +4,11 @@
  */
 package com.github.anastaciocintra.printer.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.concurrent.CompletionStage;
 
 import com.github.anastaciocintra.printer.Printer;
 import com.github.anastaciocintra.printer.Style;
@@ -16,7 +18,27 @@ import com.github.anastaciocintra.printer.Style;
  */
 public final class EscPosPrinter extends Printer {
 
+    /**
+     * Section of commands that can be stored as printer macro.
+     */
+    @FunctionalInterface
+    public interface MacroBody {
+
+        /**
+         * Writes the section. The bytes are replayed by the printer, so on
+         * each call they must be the same and must not depend on state kept
+         * by the printer instance, like the code page selected by one
+         * <code>CodePageEncoder</code>.
+         *
+         * @param printer printer to write on
+         * @exception IOException if an I/O error occurs
+         */
+        void write(Printer printer) throws IOException;
+    }
+
     private EscPosStyleConfig styleConfig;
+    private MacroRegistry macroRegistry;
+    private String printerId;
 
     /**
      * Creates an instance based on outputStream.
@@ -33,10 +55,103 @@ public final class EscPosPrinter extends Printer {
         this(outputStream, new EscPosStyleConfig());
     }
 
+    /**
+     * Enables printer macros.
+     *
+     * @param macroRegistry registry shared by the printers instances
+     * @param printerId identification of the physical printer on the registry
+     * @return this object
+     * @see #writeMacro(String, MacroBody, CompletionStage)
+     */
+    public EscPosPrinter setMacroRegistry(MacroRegistry macroRegistry, String printerId) {
+        this.macroRegistry = macroRegistry;
+        this.printerId = printerId;
+        return this;
+    }
+
+    /**
+     * Writes one section that repeats on many receipts, like a header or a
+     * footer, using the printer macro.
+     * <p>
+     * The first time, the section is sent inside one macro definition
+     * (<code>GS :</code>), which the printer stores and prints. The macro is
+     * taken as loaded only when <code>delivery</code> completes normally;
+     * from then on only the execute command (<code>GS ^</code>) is sent. The
+     * printer keeps one macro; sections bigger than the macro area, sections
+     * of other name, sections written while the definition is not delivered
+     * yet, or printers without registry get the section inline.
+     * <p>
+     * A replayed macro does not run <code>body</code>, so the state of one
+     * <code>CodePageEncoder</code> would not follow the code table selected
+     * by the macro. When a code page encoder is set, the section is always
+     * written inline.
+     * <p>
+     * The jobs must reach the printer in the order they were composed, a job
+     * with the execute command cannot pass the job with the definition. When
+     * the jobs can be reordered or dropped (priority schedulers, discarded
+     * jobs), do not use a registry, so the section is always inline.
+     *
+     * @param macroName name of the section, different content needs another
+     * name
+     * @param body writes the section
+     * @param delivery completes when the job being composed is delivered to
+     * the printer, like <code>TcpIpOutputStream.getCompletion()</code> or
+     * <code>JobOutputStream.getCompletion()</code>
+     * @return this object
+     * @exception IOException if an I/O error occurs
+     * @see MacroRegistry
+     */
+    public EscPosPrinter writeMacro(String macroName, MacroBody body, CompletionStage<?> delivery)
+            throws IOException {
+        if (macroRegistry == null || getCodePageEncoder() != null) {
+            body.write(this);
+            return this;
+        }
+        if (macroName.equals(macroRegistry.getLoaded(printerId))) {
+            write(GS);
+            write('^');
+            write(1);
+            write(0);
+            write(0);
+            return this;
+        }
+        OutputStream original = getOutputStream();
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        setOutputStream(recording);
+        try {
+            body.write(this);
+        } finally {
+            setOutputStream(original);
+        }
+        MacroRegistry registry = macroRegistry;
+        String id = printerId;
+        MacroRegistry.Definition definition = recording.size() <= registry.getMaxMacroSize()
+                ? registry.claim(id, macroName) : null;
+        if (definition == null) {
+            recording.writeTo(original);
+            return this;
+        }
+        try {
+            write(GS);
+            write(':');
+            recording.writeTo(original);
+            write(GS);
+            write(':');
+        } catch (IOException | RuntimeException ex) {
+            registry.complete(id, definition, false);
+            throw ex;
+        }
+        delivery.whenComplete((result, failure) -> registry.complete(id, definition, failure == null));
+        return this;
+    }
+
     @Override
     public Printer initialize() throws IOException {
         write(ESC);
         write('@');
+        if (getCodePageEncoder() != null) {
+            getCodePageEncoder().reset();
+        }
         return this;
     }
 
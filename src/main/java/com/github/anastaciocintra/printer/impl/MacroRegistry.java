@@ -0,0 +1,126 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps which macro is loaded on each printer.
+ * <p>
+ * ESC/POS printers have one macro area, so each printer holds at most one
+ * macro. The registry is shared by all <code>EscPosPrinter</code> instances
+ * that write to the same physical printers; the printer is identified by any
+ * name chosen by the application, like its address.
+ * <p>
+ * One job claims the macro area when it is composed with the definition, and
+ * the macro is only taken as loaded when that job is delivered. While the
+ * definition is pending, other jobs get the section inline. If the delivery
+ * fails, the claim is dropped and the next job defines the macro again.
+ * <p>
+ * The macro area is lost when the printer is turned off, call
+ * <code>invalidate</code> when the printer is restarted or when one job may
+ * not have been delivered.
+ *
+ * @see EscPosPrinter#writeMacro(String, EscPosPrinter.MacroBody, java.util.concurrent.CompletionStage)
+ */
+public class MacroRegistry {
+
+    /**
+     * Maximum size of one macro on ESC/POS printers.
+     */
+    public static final int MAX_MACRO_SIZE = 2048;
+
+    /**
+     * Macro of one printer, pending while the defining job is not delivered.
+     * Compared by identity, so a late delivery cannot confirm a newer claim.
+     */
+    static final class Definition {
+        final String macroName;
+        final boolean loaded;
+
+        Definition(String macroName, boolean loaded) {
+            this.macroName = macroName;
+            this.loaded = loaded;
+        }
+    }
+
+    private final Map<String, Definition> definitions = new ConcurrentHashMap<>();
+    private volatile int maxMacroSize = MAX_MACRO_SIZE;
+
+    /**
+     * Sets the maximum size of one macro, bigger sections are always written
+     * inline. Default is 2048.
+     *
+     * @param maxMacroSize size in bytes
+     * @return this object
+     */
+    public MacroRegistry setMaxMacroSize(int maxMacroSize) {
+        this.maxMacroSize = maxMacroSize;
+        return this;
+    }
+
+    public int getMaxMacroSize() {
+        return maxMacroSize;
+    }
+
+    /**
+     * Gets the name of the macro loaded on one printer.
+     *
+     * @param printerId printer identification
+     * @return macro name, or null if no macro is known to be loaded or the
+     * definition is not delivered yet
+     */
+    public String getLoaded(String printerId) {
+        Definition definition = definitions.get(printerId);
+        return definition != null && definition.loaded ? definition.macroName : null;
+    }
+
+    /**
+     * Claims the macro area of one printer to define one macro.
+     *
+     * @param printerId printer identification
+     * @param macroName name of the macro
+     * @return the pending definition, or null if the printer already has one
+     * macro loaded or pending
+     */
+    Definition claim(String printerId, String macroName) {
+        Definition pending = new Definition(macroName, false);
+        return definitions.putIfAbsent(printerId, pending) == null ? pending : null;
+    }
+
+    /**
+     * Ends one claim, when the job with the definition is delivered or
+     * failed.
+     *
+     * @param printerId printer identification
+     * @param pending value returned by claim
+     * @param delivered true if the definition reached the printer
+     */
+    void complete(String printerId, Definition pending, boolean delivered) {
+        if (delivered) {
+            definitions.replace(printerId, pending, new Definition(pending.macroName, true));
+        } else {
+            definitions.remove(printerId, pending);
+        }
+    }
+
+    /**
+     * Forgets the macro of one printer, the next use defines it again.
+     *
+     * @param printerId printer identification
+     */
+    public void invalidate(String printerId) {
+        definitions.remove(printerId);
+    }
+
+    /**
+     * Forgets the macros of all printers.
+     */
+    public void invalidateAll() {
+        definitions.clear();
+    }
+
+}
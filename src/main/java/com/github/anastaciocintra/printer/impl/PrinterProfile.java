@@ -0,0 +1,255 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer.impl;
+
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.github.anastaciocintra.output.PacedOutputStream;
+import com.github.anastaciocintra.output.TokenBucket;
+import com.github.anastaciocintra.printer.Dialect;
+import com.github.anastaciocintra.printer.Printer;
+
+/**
+ * Capabilities of one printer model.
+ * <p>
+ * The profile declares the command set, the paper width, the size of the
+ * receive buffer, the sustainable data rate and the supported features. The
+ * printers created by the profile pace the writes so the receive buffer is
+ * never overrun. The predefined profiles are conservative, measure the
+ * actual model to tune them.
+ * <p>
+ * The pacing state belongs to the physical printer, not to one stream: one
+ * profile instance keeps one token bucket shared by all the streams it
+ * paces, so use one instance per physical printer (the factory methods
+ * return new instances), or pass the bucket of the printer explicitly.
+ */
+public class PrinterProfile {
+
+    /**
+     * Optional features of one printer model.
+     */
+    public enum Feature {
+        CUT,
+        PARTIAL_CUT,
+        CASH_DRAWER,
+        RASTER_IMAGE,
+        CODE_PAGES,
+        CHINESE,
+        MACROS
+    }
+
+    private final String name;
+    private final Dialect dialect;
+    private int paperWidthDots = 576;
+    private int receiveBufferSize = 4096;
+    private long bytesPerSecond = 0;
+    private int lineSpacingDot = 56;
+    private final Set<Feature> features = EnumSet.noneOf(Feature.class);
+    private TokenBucket tokenBucket;
+
+    /**
+     * Creates one profile without pacing and without optional features.
+     *
+     * @param name model name
+     * @param dialect command set of the model
+     */
+    public PrinterProfile(String name, Dialect dialect) {
+        this.name = name;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Generic ESC/POS printer with 58mm paper.
+     *
+     * @return new profile
+     */
+    public static PrinterProfile escPos58mm() {
+        return new PrinterProfile("ESC/POS 58mm", Dialect.ESC_POS)
+                .setPaperWidthDots(384)
+                .setReceiveBufferSize(4096)
+                .setBytesPerSecond(16 * 1024)
+                .addFeatures(Feature.CUT, Feature.CASH_DRAWER, Feature.RASTER_IMAGE, Feature.CODE_PAGES);
+    }
+
+    /**
+     * Generic ESC/POS printer with 80mm paper.
+     *
+     * @return new profile
+     */
+    public static PrinterProfile escPos80mm() {
+        return new PrinterProfile("ESC/POS 80mm", Dialect.ESC_POS)
+                .setPaperWidthDots(576)
+                .setReceiveBufferSize(8192)
+                .setBytesPerSecond(48 * 1024)
+                .addFeatures(Feature.CUT, Feature.PARTIAL_CUT, Feature.CASH_DRAWER, Feature.RASTER_IMAGE,
+                        Feature.CODE_PAGES, Feature.MACROS);
+    }
+
+    /**
+     * Generic StarPRNT printer with 80mm paper.
+     *
+     * @return new profile
+     */
+    public static PrinterProfile starPrnt80mm() {
+        return new PrinterProfile("StarPRNT 80mm", Dialect.STAR_PRNT)
+                .setPaperWidthDots(576)
+                .setReceiveBufferSize(16 * 1024)
+                .setBytesPerSecond(64 * 1024)
+                .addFeatures(Feature.CUT, Feature.PARTIAL_CUT, Feature.CASH_DRAWER, Feature.RASTER_IMAGE,
+                        Feature.CODE_PAGES, Feature.CHINESE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public int getPaperWidthDots() {
+        return paperWidthDots;
+    }
+
+    public PrinterProfile setPaperWidthDots(int paperWidthDots) {
+        this.paperWidthDots = paperWidthDots;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public synchronized PrinterProfile setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        this.tokenBucket = null;
+        return this;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Sets the sustainable data rate of the printer.
+     *
+     * @param bytesPerSecond rate, zero means no pacing
+     * @return this object
+     */
+    public synchronized PrinterProfile setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokenBucket = null;
+        return this;
+    }
+
+    public int getLineSpacingDot() {
+        return lineSpacingDot;
+    }
+
+    public PrinterProfile setLineSpacingDot(int lineSpacingDot) {
+        this.lineSpacingDot = lineSpacingDot;
+        return this;
+    }
+
+    public PrinterProfile addFeatures(Feature... features) {
+        for (Feature feature : features) {
+            this.features.add(feature);
+        }
+        return this;
+    }
+
+    public boolean supports(Feature feature) {
+        return features.contains(feature);
+    }
+
+    /**
+     * Gets the token bucket of this profile, created on the first call.
+     *
+     * @return bucket shared by the streams paced by this profile, or null
+     * when the profile has no rate
+     */
+    public synchronized TokenBucket getTokenBucket() {
+        if (bytesPerSecond <= 0) {
+            return null;
+        }
+        if (tokenBucket == null) {
+            tokenBucket = createTokenBucket();
+        }
+        return tokenBucket;
+    }
+
+    /**
+     * Creates one new token bucket with the rate and buffer size of this
+     * model, for callers that keep one bucket per physical printer.
+     *
+     * @return new bucket, or null when the profile has no rate
+     */
+    public TokenBucket createTokenBucket() {
+        if (bytesPerSecond <= 0) {
+            return null;
+        }
+        return new TokenBucket(bytesPerSecond, receiveBufferSize);
+    }
+
+    /**
+     * Wraps the output stream to pace the writes at the rate of the printer,
+     * using the token bucket of this profile.
+     *
+     * @param outputStream stream connected to the printer
+     * @return paced stream, or the same stream when the profile has no rate
+     * @see #getTokenBucket()
+     */
+    public OutputStream pace(OutputStream outputStream) {
+        return pace(outputStream, getTokenBucket());
+    }
+
+    /**
+     * Wraps the output stream to pace the writes with one given bucket.
+     *
+     * @param outputStream stream connected to the printer
+     * @param bucket token bucket of the physical printer
+     * @return paced stream, or the same stream when bucket is null
+     */
+    public OutputStream pace(OutputStream outputStream, TokenBucket bucket) {
+        if (bucket == null) {
+            return outputStream;
+        }
+        return new PacedOutputStream(outputStream, bucket);
+    }
+
+    /**
+     * Creates one printer of this model, with output paced by the token
+     * bucket of this profile.
+     *
+     * @param outputStream stream connected to the printer
+     * @return EscPosPrinter or StarPrntPrinter, according to the dialect
+     */
+    public Printer createPrinter(OutputStream outputStream) {
+        return createPrinter(outputStream, getTokenBucket());
+    }
+
+    /**
+     * Creates one printer of this model, with output paced by one given
+     * bucket.
+     *
+     * @param outputStream stream connected to the printer
+     * @param bucket token bucket of the physical printer, null for no pacing
+     * @return EscPosPrinter or StarPrntPrinter, according to the dialect
+     */
+    public Printer createPrinter(OutputStream outputStream, TokenBucket bucket) {
+        OutputStream paced = pace(outputStream, bucket);
+        if (dialect == Dialect.STAR_PRNT) {
+            return new StarPrntPrinter(paced);
+        }
+        return new EscPosPrinter(paced, new EscPosStyleConfig().setLineSpacingDot(lineSpacingDot));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
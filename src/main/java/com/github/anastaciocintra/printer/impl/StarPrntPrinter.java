@@ -29,6 +29,9 @@ public final class StarPrntPrinter extends Printer {
     public Printer initialize() throws IOException {
         write(ESC);
         write('@');
+        if (getCodePageEncoder() != null) {
+            getCodePageEncoder().reset();
+        }
         return this;
     }
 
@@ -0,0 +1,64 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the delivery of each destination follows the completion of
+ * its stream, also through wrappers.
+ */
+public class BroadcastOutputStreamTest {
+
+    /**
+     * Stream that takes the bytes and fails the delivery after close.
+     */
+    private static class UndeliveredOutputStream extends ByteArrayOutputStream implements CompletionAware {
+        private final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+
+        @Override
+        public CompletableFuture<JobResult> getCompletion() {
+            return completion;
+        }
+
+        @Override
+        public void close() {
+            completion.completeExceptionally(new IOException("printer offline"));
+        }
+    }
+
+    @Test
+    void wrappedDeliveryFailureIsReported() throws Exception {
+        BroadcastOutputStream broadcast = new BroadcastOutputStream(Runnable::run);
+        broadcast.addDestination("paced", () -> new PacedOutputStream(new UndeliveredOutputStream(), 1000000, 1000000));
+        broadcast.addDestination("plain", ByteArrayOutputStream::new);
+        broadcast.write(new byte[100]);
+        broadcast.close();
+        broadcast.getCompletion().get();
+
+        Map<String, Throwable> failures = broadcast.getFailures();
+        assertEquals(1, failures.size());
+        assertEquals("printer offline", failures.get("paced").getMessage());
+        assertEquals(100, broadcast.getCompletion("plain").get().getBytes());
+    }
+
+    @Test
+    void cancelledDestinationIsReported() throws IOException {
+        BroadcastOutputStream broadcast = new BroadcastOutputStream(Runnable::run);
+        broadcast.addDestination("cancelled", ByteArrayOutputStream::new).cancel(false);
+        broadcast.close();
+        assertTrue(broadcast.getFailures().get("cancelled") instanceof CancellationException);
+    }
+
+}
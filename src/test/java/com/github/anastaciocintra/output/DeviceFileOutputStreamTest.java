@@ -0,0 +1,114 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the bytes written on one regular file and on one FIFO whose reader
+ * stalls past the write timeout.
+ */
+public class DeviceFileOutputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    @Test
+    void bytesReachTheFileInOrder() throws IOException {
+        Path file = Files.createFile(tempDir.resolve("lp0"));
+        ByteBufferPool pool = new ByteBufferPool(true, 1024 * 1024);
+        byte[] data = data(10000);
+        DeviceFileOutputStream outputStream = new DeviceFileOutputStream(file, 1024, pool);
+        outputStream.write(data[0]);
+        outputStream.write(data, 1, 100);
+        outputStream.flush();
+        // bigger than one block and the buffer is empty, written directly
+        outputStream.write(data, 101, 4000);
+        outputStream.write(data, 4101, data.length - 4101);
+        outputStream.close();
+
+        assertArrayEquals(data, Files.readAllBytes(file));
+        assertEquals(1024, pool.getPooledBytes());
+        assertThrows(IOException.class, () -> outputStream.write('a'));
+    }
+
+    @Test
+    void stalledWriteIsRetriedOnNewChannel() throws Exception {
+        Path fifo = tempDir.resolve("fifo");
+        assumeTrue(mkfifo(fifo), "FIFO not supported");
+        byte[] data = data(256 * 1024);
+        // the reader stalls longer than the write timeout, the pipe fills up
+        CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> read(fifo, data.length, 500));
+
+        DeviceFileOutputStream outputStream = new DeviceFileOutputStream(fifo, 1024, new ByteBufferPool(true, 1024 * 1024));
+        outputStream.setWriteTimeout(200);
+        outputStream.setMaxReopenAttempts(5);
+        outputStream.write(data);
+        outputStream.close();
+
+        assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+    }
+
+    private static boolean mkfifo(Path path) {
+        try {
+            return new ProcessBuilder("mkfifo", path.toString()).start().waitFor() == 0;
+        } catch (IOException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reads the FIFO after one pause, reading on while the writer opens it
+     * again.
+     */
+    private static byte[] read(Path fifo, int size, long pauseMillis) {
+        ByteArrayOutputStream received = new ByteArrayOutputStream(size);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try (InputStream in = new FileInputStream(fifo.toFile())) {
+            Thread.sleep(pauseMillis);
+            byte[] block = new byte[8192];
+            while (received.size() < size && System.nanoTime() < deadline) {
+                int n = in.read(block);
+                if (n < 0) {
+                    Thread.sleep(10);
+                    continue;
+                }
+                received.write(block, 0, n);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return received.toByteArray();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import com.github.anastaciocintra.printer.Dialect;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the commands removed and kept on ESC/POS and StarPRNT receipts.
+ */
+public class OptimizingOutputStreamTest {
+
+    private static final int ESC = 0x1B;
+    private static final int GS = 0x1D;
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] optimize(Dialect dialect, boolean dropTrailingState, int... job) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OptimizingOutputStream optimizer = new OptimizingOutputStream(out, dialect);
+        optimizer.setDropTrailingState(dropTrailingState);
+        optimizer.write(bytes(job));
+        optimizer.close();
+        assertEquals(job.length - out.size(), optimizer.getBytesSaved());
+
+        // the same job written byte by byte gives the same result
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        optimizer = new OptimizingOutputStream(single, dialect);
+        optimizer.setDropTrailingState(dropTrailingState);
+        for (int b : job) {
+            optimizer.write(b);
+        }
+        optimizer.close();
+        assertArrayEquals(out.toByteArray(), single.toByteArray());
+        return out.toByteArray();
+    }
+
+    @Test
+    void escPosFeedsAreMerged() throws IOException {
+        assertArrayEquals(bytes(ESC, 'd', 5, 'A'),
+                optimize(Dialect.ESC_POS, false, ESC, 'd', 2, ESC, 'd', 3, 'A'));
+    }
+
+    @Test
+    void escPosRedundantStylesAreDropped() throws IOException {
+        assertArrayEquals(bytes(ESC, 'a', 2, ESC, 'E', 1, 'A', 'B'),
+                optimize(Dialect.ESC_POS, false,
+                        ESC, 'a', 1, ESC, 'E', 1, ESC, 'E', 0, ESC, 'a', 2, ESC, 'E', 1, 'A',
+                        ESC, 'E', 1, ESC, 'a', 2, 'B'));
+    }
+
+    @Test
+    void escPosTrailingStateIsKept() throws IOException {
+        assertArrayEquals(bytes('A', ESC, 'E', 1, ESC, 'a', 1),
+                optimize(Dialect.ESC_POS, false, 'A', ESC, 'E', 1, ESC, 'a', 1));
+        assertArrayEquals(bytes('A'),
+                optimize(Dialect.ESC_POS, true, 'A', ESC, 'E', 1, ESC, 'a', 1));
+    }
+
+    @Test
+    void escPosUnknownCommandSwitchesToPassThrough() throws IOException {
+        // GS ( k stores one QR code, the optimizer does not know its length
+        assertArrayEquals(bytes(ESC, 'E', 1, 'A',
+                GS, '(', 'k', 3, 0, 49, 65, 48,
+                ESC, 'E', 1, ESC, 'E', 1, ESC, 'd', 1, ESC, 'd', 1, 'B'),
+                optimize(Dialect.ESC_POS, false,
+                        ESC, 'E', 1, ESC, 'E', 1, 'A',
+                        GS, '(', 'k', 3, 0, 49, 65, 48,
+                        ESC, 'E', 1, ESC, 'E', 1, ESC, 'd', 1, ESC, 'd', 1, 'B'));
+    }
+
+    @Test
+    void starPrntFeedsAreMerged() throws IOException {
+        assertArrayEquals(bytes(ESC, 'a', 5, 'A'),
+                optimize(Dialect.STAR_PRNT, false, ESC, 'a', 2, ESC, 'a', 3, 'A'));
+    }
+
+    @Test
+    void starPrntRedundantStylesAreDropped() throws IOException {
+        assertArrayEquals(bytes(ESC, GS, 'a', 1, ESC, 'E', 'A', 'B'),
+                optimize(Dialect.STAR_PRNT, false,
+                        ESC, 'E', ESC, 'F', ESC, GS, 'a', 1, ESC, 'E', 'A',
+                        ESC, 'E', ESC, GS, 'a', 1, 'B'));
+    }
+
+    @Test
+    void starPrntTrailingStateIsKept() throws IOException {
+        assertArrayEquals(bytes('A', ESC, 'E'),
+                optimize(Dialect.STAR_PRNT, false, 'A', ESC, 'E'));
+        assertArrayEquals(bytes('A'),
+                optimize(Dialect.STAR_PRNT, true, 'A', ESC, 'E'));
+    }
+
+    @Test
+    void starPrntUnknownCommandSwitchesToPassThrough() throws IOException {
+        assertArrayEquals(bytes(ESC, 'E', 'A', ESC, GS, '#', 1, ESC, 'E', ESC, 'E', 'B'),
+                optimize(Dialect.STAR_PRNT, false,
+                        ESC, 'E', ESC, 'E', 'A', ESC, GS, '#', 1, ESC, 'E', ESC, 'E', 'B'));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the jobs complete with the close or the delivery of the
+ * output stream that sent them.
+ */
+public class PrintSchedulerTest {
+
+    /**
+     * Stream whose close fails.
+     */
+    private static class UnclosableOutputStream extends ByteArrayOutputStream {
+        @Override
+        public void close() throws IOException {
+            throw new IOException("connection reset");
+        }
+    }
+
+    /**
+     * Stream whose delivery fails after close.
+     */
+    private static class UndeliveredOutputStream extends ByteArrayOutputStream implements CompletionAware {
+        private final CompletableFuture<JobResult> completion = new CompletableFuture<>();
+
+        @Override
+        public CompletableFuture<JobResult> getCompletion() {
+            return completion;
+        }
+
+        @Override
+        public void close() {
+            completion.completeExceptionally(new IOException("printer offline"));
+        }
+    }
+
+    @Test
+    void jobCompletesWhenTheStreamIsClosed() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintScheduler scheduler = new PrintScheduler();
+        scheduler.addPrinter("p", () -> out);
+        byte[] data = "ticket".getBytes("US-ASCII");
+        scheduler.submit("p", PrintScheduler.Priority.NORMAL, "c", data).get(10, TimeUnit.SECONDS);
+        scheduler.close();
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void closeFailureFailsEveryJobSentOnTheStream() throws Exception {
+        PrintScheduler scheduler = new PrintScheduler().setIdleCloseMillis(200);
+        scheduler.addPrinter("p", UnclosableOutputStream::new);
+        CompletableFuture<Void> first = scheduler.submit("p", PrintScheduler.Priority.NORMAL, "c", new byte[10]);
+        CompletableFuture<Void> second = scheduler.submit("p", PrintScheduler.Priority.NORMAL, "c", new byte[10]);
+        assertCause("connection reset", first);
+        assertCause("connection reset", second);
+        scheduler.close();
+    }
+
+    @Test
+    void deliveryFailureFailsTheJob() throws Exception {
+        PrintScheduler scheduler = new PrintScheduler();
+        scheduler.addPrinter("p", () -> new PacedOutputStream(new UndeliveredOutputStream(), 1000000, 1000000));
+        assertCause("printer offline", scheduler.submit("p", PrintScheduler.Priority.NORMAL, "c", new byte[10]));
+        scheduler.close();
+    }
+
+    @Test
+    void submitAfterCloseFails() throws IOException {
+        PrintScheduler scheduler = new PrintScheduler();
+        scheduler.addPrinter("p", ByteArrayOutputStream::new);
+        scheduler.close();
+        assertThrows(IllegalStateException.class,
+                () -> scheduler.submit("p", PrintScheduler.Priority.URGENT, "c", new byte[10]));
+    }
+
+    private static void assertCause(String message, CompletableFuture<Void> completion) throws Exception {
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> completion.get(10, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IOException);
+        assertEquals(message, ex.getCause().getCause().getMessage());
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the jobs of one shared output and the reuse of their buffers.
+ */
+public class SharedPrinterOutputTest {
+
+    @Test
+    void jobIsSentOnClose() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SharedPrinterOutput shared = new SharedPrinterOutput(out, new ByteBufferPool(false, 1024 * 1024));
+        JobOutputStream job = shared.openJob();
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        job.write(data);
+        assertEquals(0, out.size());
+        job.close();
+        assertArrayEquals(data, out.toByteArray());
+        assertTrue(job.getCompletion().isDone());
+    }
+
+    @Test
+    void writesAfterCloseOrDiscardFail() throws IOException {
+        SharedPrinterOutput shared = new SharedPrinterOutput(new ByteArrayOutputStream());
+        JobOutputStream closed = shared.openJob();
+        closed.close();
+        assertThrows(IOException.class, () -> closed.write('a'));
+        assertThrows(IOException.class, () -> closed.write(new byte[8192]));
+
+        JobOutputStream discarded = shared.openJob();
+        discarded.discard();
+        assertThrows(IOException.class, () -> discarded.write('a'));
+        assertTrue(discarded.getCompletion().isCancelled());
+    }
+
+    @Test
+    void doubleReleaseIsIgnored() {
+        ByteBufferPool pool = new ByteBufferPool(false, 1024 * 1024);
+        ByteBuffer buffer = pool.acquire(1000);
+        pool.release(buffer);
+        pool.release(buffer);
+        assertEquals(buffer.capacity(), pool.getPooledBytes());
+        ByteBuffer first = pool.acquire(1000);
+        ByteBuffer second = pool.acquire(1000);
+        assertNotSame(first, second);
+    }
+
+}
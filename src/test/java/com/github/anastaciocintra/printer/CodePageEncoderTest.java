@@ -0,0 +1,74 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import com.github.anastaciocintra.printer.impl.EscPosPrinter;
+import com.github.anastaciocintra.printer.impl.StarPrntPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks the code page selected for each run of text and that the encoder
+ * follows the printer initialization.
+ */
+public class CodePageEncoderTest {
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+
+    @Test
+    void firstCodePageIsPreferred() {
+        CodePageEncoder encoder = new CodePageEncoder(Dialect.ESC_POS, CodePage.CP858, CodePage.CP437);
+        assertArrayEquals(new byte[]{ESC, 't', 19, (byte) 0x82}, encoder.encode("é"));
+    }
+
+    @Test
+    void codePageCoversTheLongestRun() {
+        CodePageEncoder encoder = new CodePageEncoder(Dialect.ESC_POS, CodePage.CP858, CodePage.CP437);
+        // é is on both, Ω only on CP437: one switch for both characters
+        assertArrayEquals(new byte[]{ESC, 't', 0, (byte) 0x82, (byte) 0xEA}, encoder.encode("éΩ"));
+        // € is only on CP858
+        assertArrayEquals(new byte[]{'a', ESC, 't', 19, (byte) 0xD5}, encoder.encode("a€"));
+    }
+
+    @Test
+    void activeCodePageIsNotSelectedAgain() {
+        CodePageEncoder encoder = new CodePageEncoder(Dialect.ESC_POS, CodePage.CP858, CodePage.CP437);
+        encoder.encode("é");
+        assertArrayEquals(new byte[]{(byte) 0x82, ' ', (byte) 0xA4}, encoder.encode("é ñ"));
+    }
+
+    @Test
+    void unknownCharactersAreReplaced() {
+        CodePageEncoder encoder = new CodePageEncoder(Dialect.ESC_POS, CodePage.CP437);
+        assertArrayEquals(new byte[]{'a', '?', 'b'}, encoder.encode("a中b"));
+    }
+
+    @Test
+    void starPrntUsesItsSwitchCommand() {
+        CodePageEncoder encoder = new CodePageEncoder(Dialect.STAR_PRNT, CodePage.CP858);
+        assertArrayEquals(new byte[]{ESC, GS, 't', 4, (byte) 0xD5}, encoder.encode("€"));
+    }
+
+    @Test
+    void initializeResetsTheEncoder() throws IOException {
+        CodePageEncoder escPos = new CodePageEncoder(Dialect.ESC_POS, CodePage.CP858);
+        Printer printer = new EscPosPrinter(new ByteArrayOutputStream()).setCodePageEncoder(escPos);
+        printer.write("é");
+        printer.initialize();
+        assertArrayEquals(new byte[]{ESC, 't', 19, (byte) 0x82}, escPos.encode("é"));
+
+        CodePageEncoder starPrnt = new CodePageEncoder(Dialect.STAR_PRNT, CodePage.CP858);
+        printer = new StarPrntPrinter(new ByteArrayOutputStream()).setCodePageEncoder(starPrnt);
+        printer.write("é");
+        printer.initialize();
+        assertArrayEquals(new byte[]{ESC, GS, 't', 4, (byte) 0x82}, starPrnt.encode("é"));
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import com.github.anastaciocintra.printer.impl.EscPosPrinter;
+import com.github.anastaciocintra.printer.impl.EscPosStyleConfig;
+import com.github.anastaciocintra.printer.impl.StarPrntPrinter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the allocation of the printing hot path.
+ * <p>
+ * Canonical receipts are rendered into a null sink after a warm up, and the
+ * bytes allocated by the test thread are measured with
+ * <code>com.sun.management.ThreadMXBean</code>. The lowest of some rounds is
+ * taken, so one-off allocations of the JVM (class loading, deoptimization)
+ * do not fail the test. The bounds have some margin over the measured values; when an optimization lowers the allocation,
+ * lower the bound too so it cannot regress silently.
+ */
+public class PrinterAllocationTest {
+
+    private static final int WARM_UP = 5000;
+    private static final int MEASURED = 500;
+    private static final int ROUNDS = 5;
+
+    private static final String[] ITEMS = {
+        "1  Espresso                      3.50",
+        "2  Cappuccino                    9.00",
+        "1  Pão de queijo                 4.25",
+        "3  Croissant                    11.25",
+        "1  Orange juice                  5.00",
+        "2  Cheeseburger                 25.80",
+        "1  French fries                  6.50",
+        "1  Brownie                       4.75"
+    };
+
+    private static com.sun.management.ThreadMXBean threadBean;
+
+    private final Style title = new Style()
+            .setFontSize(Style.FontSize._2, Style.FontSize._2)
+            .setJustification(Style.Justification.Center)
+            .setBold(true);
+    private final Style normal = new Style();
+    private final Style total = new Style().setBold(true).setJustification(Style.Justification.Right);
+
+    /**
+     * Output stream that drops everything.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    @BeforeAll
+    static void enableMeasurement() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean,
+                "com.sun.management.ThreadMXBean is not available");
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported(),
+                "thread allocated memory is not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Runs the task many times and gets the mean allocation of one run, the
+     * lowest of some rounds.
+     */
+    private static long allocatedPerRun(Task task) throws IOException {
+        for (int i = 0; i < WARM_UP; i++) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long lowest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURED; i++) {
+                task.run();
+            }
+            long after = threadBean.getThreadAllocatedBytes(threadId);
+            lowest = Math.min(lowest, (after - before) / MEASURED);
+        }
+        return lowest;
+    }
+
+    private static void assertAllocation(String name, long bound, long allocated) {
+        assertTrue(allocated <= bound,
+                name + " allocated " + allocated + " bytes per run, bound is " + bound);
+    }
+
+    private void writeReceipt(Printer printer) throws IOException {
+        printer.initialize();
+        printer.writeLF(title, "COFFEE SHOP");
+        printer.writeLF(normal, "------------------------------------------");
+        for (String item : ITEMS) {
+            printer.writeLF(normal, item);
+        }
+        printer.writeLF(normal, "------------------------------------------");
+        printer.writeLF(total, "TOTAL 70.05");
+        printer.feed(4);
+        printer.cut(Printer.CutMode.FULL);
+    }
+
+    @Test
+    void styleCommandsEscPos() throws IOException {
+        EscPosStyleConfig styleConfig = new EscPosStyleConfig();
+        long allocated = allocatedPerRun(() -> title.toEscPosCommands(styleConfig));
+        assertAllocation("Style.toEscPosCommands", 64, allocated);
+    }
+
+    @Test
+    void styleCommandsStarPrnt() throws IOException {
+        long allocated = allocatedPerRun(title::toStarPrntCommands);
+        assertAllocation("Style.toStarPrntCommands", 64, allocated);
+    }
+
+    @Test
+    void receiptEscPos() throws IOException {
+        Printer printer = new EscPosPrinter(new NullOutputStream());
+        long allocated = allocatedPerRun(() -> writeReceipt(printer));
+        assertAllocation("ESC/POS receipt", 2048, allocated);
+    }
+
+    @Test
+    void receiptStarPrnt() throws IOException {
+        Printer printer = new StarPrntPrinter(new NullOutputStream());
+        long allocated = allocatedPerRun(() -> writeReceipt(printer));
+        assertAllocation("StarPRNT receipt", 2048, allocated);
+    }
+
+    @Test
+    void receiptEscPosWithEncodedStringCache() throws IOException {
+        Printer printer = new EscPosPrinter(new NullOutputStream())
+                .setEncodedStringCache(new EncodedStringCache(256));
+        long allocated = allocatedPerRun(() -> writeReceipt(printer));
+        assertAllocation("ESC/POS receipt with EncodedStringCache", 1536, allocated);
+    }
+
+    @Test
+    void receiptStarPrntWithEncodedStringCache() throws IOException {
+        Printer printer = new StarPrntPrinter(new NullOutputStream())
+                .setEncodedStringCache(new EncodedStringCache(256));
+        long allocated = allocatedPerRun(() -> writeReceipt(printer));
+        assertAllocation("StarPRNT receipt with EncodedStringCache", 1536, allocated);
+    }
+
+    @Test
+    void receiptEscPosWithCodePageEncoder() throws IOException {
+        Printer printer = new EscPosPrinter(new NullOutputStream())
+                .setCodePageEncoder(new CodePageEncoder(Dialect.ESC_POS, CodePage.CP858, CodePage.CP437));
+        long allocated = allocatedPerRun(() -> writeReceipt(printer));
+        assertAllocation("ESC/POS receipt with CodePageEncoder", 4096, allocated);
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import com.github.anastaciocintra.printer.impl.EscPosPrinter;
+import com.github.anastaciocintra.printer.impl.StarPrntPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that the parallel report gives the same bytes of writing each line
+ * with <code>writeLF</code>.
+ */
+public class ReportWriterTest {
+
+    /**
+     * Printer that writes the text in upper case.
+     */
+    private static class UpperCasePrinter extends Printer {
+
+        UpperCasePrinter(OutputStream outputStream) {
+            super(outputStream, Charset.forName("UTF-8"));
+        }
+
+        @Override
+        public Printer write(Style style, String text) throws IOException {
+            return super.write(style, text.toUpperCase());
+        }
+
+        @Override
+        public Printer initialize() {
+            return this;
+        }
+
+        @Override
+        public Printer setLineSpacing() {
+            return this;
+        }
+
+        @Override
+        public Printer setChineseCharacterSupport() {
+            return this;
+        }
+
+        @Override
+        public Printer setExternalDrawerPulse() {
+            return this;
+        }
+
+        @Override
+        public Printer feed(int lines) {
+            return this;
+        }
+
+        @Override
+        public Printer cut(CutMode mode) {
+            return this;
+        }
+
+        @Override
+        public Printer pulse() {
+            return this;
+        }
+
+        @Override
+        protected byte[] getStyleCommands(Style style) {
+            return new byte[]{(byte) style.getFontWidth().value};
+        }
+    }
+
+    private interface PrinterFactory {
+        Printer create(OutputStream outputStream);
+    }
+
+    private final List<Style> styles = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+
+    public ReportWriterTest() {
+        Style normal = new Style();
+        Style bold = new Style().setBold(true);
+        Style big = new Style().setFontSize(Style.FontSize._2, Style.FontSize._2);
+        for (int i = 0; i < 1000; i++) {
+            styles.add(i % 7 == 0 ? bold : i % 5 == 0 ? big : normal);
+            lines.add("line " + i + " total 1.234,56 é");
+        }
+    }
+
+    @Test
+    void escPosReportMatchesWriteLF() throws IOException {
+        assertSameBytes(EscPosPrinter::new);
+        assertSameBytes(out -> new EscPosPrinter(out).setEncodedStringCache(new EncodedStringCache(64)));
+    }
+
+    @Test
+    void starPrntReportMatchesWriteLF() throws IOException {
+        assertSameBytes(StarPrntPrinter::new);
+    }
+
+    @Test
+    void overriddenWriteIsUsed() throws IOException {
+        assertSameBytes(UpperCasePrinter::new);
+    }
+
+    private void assertSameBytes(PrinterFactory factory) throws IOException {
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        Printer printer = factory.create(sequential);
+        for (int i = 0; i < lines.size(); i++) {
+            printer.writeLF(styles.get(i), lines.get(i));
+        }
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        new ReportWriter(factory.create(parallel), new ForkJoinPool(4))
+                .setChunkLines(37)
+                .writeLines(styles, lines);
+        assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        new ReportWriter(factory.create(single)).writeLines(styles.subList(0, 10), lines.subList(0, 10));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        printer = factory.create(expected);
+        for (int i = 0; i < 10; i++) {
+            printer.writeLF(styles.get(i), lines.get(i));
+        }
+        assertArrayEquals(expected.toByteArray(), single.toByteArray());
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.printer;
+
+import com.github.anastaciocintra.printer.impl.EscPosPrinter;
+import com.github.anastaciocintra.printer.impl.StarPrntPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that long images are decoded once and that every read strategy
+ * prints the same bytes.
+ */
+public class StreamingRasterWriterTest {
+
+    private static final int WIDTH = 576;
+    private static final int TALL = 8000;
+
+    /**
+     * Counts the calls to <code>ImageReader.read</code>.
+     */
+    private static final class ReadCounter implements IIOReadProgressListener {
+        int reads;
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+            reads++;
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.WHITE, width, 300, Color.BLACK, true));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.RED);
+        for (int y = 0; y < height; y += 97) {
+            g.drawString("line " + y, 10 + y % 300, y);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format, boolean progressive) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(data)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return data.toByteArray();
+    }
+
+    private static byte[] print(byte[] imageData, ReadCounter counter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Printer printer = new EscPosPrinter(out);
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            ImageReader reader = ImageIO.getImageReaders(input).next();
+            try {
+                reader.setInput(input, true, false);
+                reader.addIIOReadProgressListener(counter);
+                new StreamingRasterWriter(Dialect.ESC_POS, WIDTH).write(printer, reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void tallPngIsDecodedOnce() throws IOException {
+        ReadCounter counter = new ReadCounter();
+        byte[] out = print(encode(createImage(WIDTH, TALL), "png", false), counter);
+        assertEquals(1, counter.reads);
+        // one 8 bytes header per band of 64 rows, plus the bits
+        assertEquals(TALL / 64 * 8 + TALL * WIDTH / 8, out.length);
+    }
+
+    @Test
+    void readStrategiesPrintTheSameBytes() throws IOException {
+        BufferedImage image = createImage(1200, 3001);
+        byte[] sequential = print(encode(image, "png", false), new ReadCounter());
+        byte[] bottomUp = print(encode(image, "bmp", false), new ReadCounter());
+        byte[] interlaced = print(encode(image, "png", true), new ReadCounter());
+        assertArrayEquals(sequential, bottomUp);
+        assertArrayEquals(sequential, interlaced);
+    }
+
+    @Test
+    void starPrntBandsUseTheStarRasterCommand() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingRasterWriter(Dialect.STAR_PRNT, WIDTH)
+                .write(new StarPrntPrinter(out), new ByteArrayInputStream(encode(createImage(WIDTH, 128), "png", false)));
+        byte[] bytes = out.toByteArray();
+        // ESC GS S 1, then 9 bytes header per band of 64 rows
+        assertArrayEquals(new byte[]{0x1B, 0x1D, 'S', 1, WIDTH / 8, 0, 64, 0, 0}, Arrays.copyOf(bytes, 9));
+        assertEquals(2 * 9 + 128 * WIDTH / 8, bytes.length);
+    }
+
+    @Test
+    void invalidSizesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamingRasterWriter(Dialect.ESC_POS, 0));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingRasterWriter(Dialect.ESC_POS, WIDTH).setBandHeight(0));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingRasterWriter(Dialect.ESC_POS, WIDTH).setBandHeight(-64));
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Use of this source code is governed by the MIT license that can be
+ * found in the LICENSE file.
+ */
+package com.github.anastaciocintra.tools;
+
+import com.github.anastaciocintra.output.JobResult;
+import com.github.anastaciocintra.output.TcpIpOutputStream;
+import com.github.anastaciocintra.printer.Printer;
+import com.github.anastaciocintra.printer.Style;
+import com.github.anastaciocintra.printer.TableLayout;
+import com.github.anastaciocintra.printer.impl.PrinterProfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for print servers.
+ * <p>
+ * Starts local stub printers that accept jobs over TCP and simulates
+ * terminals printing receipts to them through <code>TcpIpOutputStream</code>
+ * at a target rate. The receipts are sent on a fixed schedule; latency is
+ * measured from the time each receipt should have started to the time the
+ * job is delivered, so a slow server is not hidden by terminals waiting for
+ * it. At the end prints the latency percentiles, throughput, threads and
+ * heap used.
+ * <p>
+ * The tool is kept with the tests, it is not part of the library jar:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes com.github.anastaciocintra.tools.LoadGenerator \
+ *     --terminals 16 --printers 4 --rate 100 --duration 30 --dialect escpos
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private int terminals = 8;
+    private int printers = 2;
+    private double rate = 50;
+    private int durationSeconds = 10;
+    private String dialect = "escpos";
+    private int items = 15;
+    private long printerBytesPerSecond = 0;
+    private long timeoutMillis = 30000;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private static final String[] PRODUCTS = {
+        "Espresso", "Cappuccino", "Café com leite", "Pão de queijo", "Croissant",
+        "Orange juice", "Cheeseburger", "French fries", "Caesar salad", "Brownie"
+    };
+
+    /**
+     * Stub printer, reads and drops the jobs.
+     */
+    private final class StubPrinter implements Runnable {
+
+        final ServerSocket serverSocket;
+        // one profile per printer, so all the jobs to it share one token bucket
+        final PrinterProfile profile;
+
+        StubPrinter() throws IOException {
+            serverSocket = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+            profile = createProfile().setBytesPerSecond(printerBytesPerSecond);
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    Thread thread = new Thread(() -> drain(socket), "StubPrinter-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException ex) {
+                    return;
+                }
+            }
+        }
+
+        void drain(Socket socket) {
+            byte[] buffer = new byte[4096];
+            try (InputStream in = socket.getInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    bytesReceived.addAndGet(n);
+                    if (printerBytesPerSecond > 0) {
+                        Thread.sleep(n * 1000L / printerBytesPerSecond);
+                    }
+                }
+            } catch (IOException ex) {
+                // connection dropped by the client
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * One terminal, prints receipts one after another on its schedule.
+     */
+    private final class Terminal implements Runnable {
+
+        final int id;
+        final PrinterProfile profile;
+        final int port;
+        final long startNanos;
+        final long endNanos;
+        final long intervalNanos;
+        long[] latencies = new long[1024];
+        int count;
+
+        Terminal(int id, PrinterProfile profile, int port, long startNanos, long endNanos, long intervalNanos) {
+            this.id = id;
+            this.profile = profile;
+            this.port = port;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            // spread the first receipt of each terminal along one interval
+            long intended = startNanos + intervalNanos * id / terminals;
+            int receipt = 0;
+            while (intended < endNanos) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                try (TcpIpOutputStream outputStream = new TcpIpOutputStream("127.0.0.1", port)) {
+                    Printer printer = profile.createPrinter(outputStream);
+                    writeReceipt(printer, id, receipt++);
+                    JobResult result = outputStream.closeAndWait(timeoutMillis, TimeUnit.MILLISECONDS);
+                    record(result.getCompletedNanos() - intended);
+                    bytesSent.add(result.getBytes());
+                    completed.increment();
+                } catch (IOException | RuntimeException ex) {
+                    failed.increment();
+                }
+                intended += intervalNanos;
+            }
+        }
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private void writeReceipt(Printer printer, int terminal, int receipt) throws IOException {
+        Style title = new Style()
+                .setFontSize(Style.FontSize._2, Style.FontSize._2)
+                .setJustification(Style.Justification.Center)
+                .setBold(true);
+        Style normal = new Style();
+        TableLayout table = new TableLayout(576)
+                .addColumn(TableLayout.Column.fixed(4))
+                .addColumn(TableLayout.Column.proportional(1))
+                .addColumn(TableLayout.Column.fixed(10).setAlignment(Style.Justification.Right));
+
+        printer.initialize();
+        printer.writeLF(title, "COFFEE SHOP");
+        printer.writeLF(new Style().setJustification(Style.Justification.Center),
+                "Terminal " + terminal + " - receipt " + receipt);
+        table.writeSeparator(printer, normal, '-');
+        long total = 0;
+        for (int i = 0; i < items; i++) {
+            int quantity = 1 + (receipt + i) % 3;
+            long cents = 350 + ((receipt * 31 + i * 17) % 20) * 75;
+            total += quantity * cents;
+            table.writeRow(printer, normal, Integer.toString(quantity),
+                    PRODUCTS[(receipt + i) % PRODUCTS.length], formatCents(quantity * cents));
+        }
+        table.writeSeparator(printer, normal, '-');
+        table.writeRow(printer, new Style().setBold(true), "", "TOTAL", formatCents(total));
+        printer.feed(4);
+        printer.cut(Printer.CutMode.FULL);
+    }
+
+    private static String formatCents(long cents) {
+        return String.format(Locale.ROOT, "%d.%02d", cents / 100, cents % 100);
+    }
+
+    private PrinterProfile createProfile() {
+        switch (dialect.toLowerCase(Locale.ROOT)) {
+            case "escpos":
+                return PrinterProfile.escPos80mm();
+            case "starprnt":
+                return PrinterProfile.starPrnt80mm();
+            default:
+                throw new IllegalArgumentException("unknown dialect " + dialect + ", use escpos or starprnt");
+        }
+    }
+
+    /**
+     * Runs the load and prints the report on standard output.
+     *
+     * @exception IOException if the stub printers cannot be started
+     * @exception InterruptedException if interrupted while waiting the
+     * terminals
+     */
+    public void run() throws IOException, InterruptedException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+        StubPrinter[] stubs = new StubPrinter[printers];
+        for (int i = 0; i < printers; i++) {
+            stubs[i] = new StubPrinter();
+            Thread thread = new Thread(stubs[i], "StubPrinter-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        System.out.printf(Locale.ROOT, "%d terminals, %d printers (%s), %.1f receipts/s for %d s%n",
+                terminals, printers, stubs[0].profile.getName(), rate, durationSeconds);
+
+        threadBean.resetPeakThreadCount();
+        long intervalNanos = (long) (terminals * 1e9 / rate);
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        Terminal[] terminalTasks = new Terminal[terminals];
+        Thread[] terminalThreads = new Thread[terminals];
+        for (int i = 0; i < terminals; i++) {
+            StubPrinter stub = stubs[i % printers];
+            terminalTasks[i] = new Terminal(i, stub.profile, stub.serverSocket.getLocalPort(),
+                    startNanos, endNanos, intervalNanos);
+            terminalThreads[i] = new Thread(terminalTasks[i], "Terminal-" + i);
+            terminalThreads[i].start();
+        }
+
+        long maxHeapUsed = 0;
+        for (Thread thread : terminalThreads) {
+            while (thread.isAlive()) {
+                maxHeapUsed = Math.max(maxHeapUsed, memoryBean.getHeapMemoryUsage().getUsed());
+                thread.join(100);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        for (StubPrinter stub : stubs) {
+            stub.serverSocket.close();
+        }
+
+        int total = 0;
+        for (Terminal terminal : terminalTasks) {
+            total += terminal.count;
+        }
+        long[] latencies = new long[total];
+        int position = 0;
+        for (Terminal terminal : terminalTasks) {
+            System.arraycopy(terminal.latencies, 0, latencies, position, terminal.count);
+            position += terminal.count;
+        }
+        Arrays.sort(latencies);
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "receipts: %d ok, %d failed in %.1f s%n",
+                completed.sum(), failed.sum(), seconds);
+        System.out.printf(Locale.ROOT, "throughput: %.1f receipts/s, %.1f KB/s sent, %.1f KB/s received%n",
+                completed.sum() / seconds, bytesSent.sum() / 1024.0 / seconds,
+                bytesReceived.get() / 1024.0 / seconds);
+        System.out.printf(Locale.ROOT, "latency ms: p50 %.2f, p99 %.2f, p999 %.2f, max %.2f%n",
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                percentile(latencies, 0.999) / 1e6, (total == 0 ? 0 : latencies[total - 1]) / 1e6);
+        System.out.printf(Locale.ROOT, "threads: %d peak, %d live%n",
+                threadBean.getPeakThreadCount(), threadBean.getThreadCount());
+        System.out.printf(Locale.ROOT, "heap MB: %.1f max used, %.1f committed%n",
+                maxHeapUsed / 1048576.0, memoryBean.getHeapMemoryUsage().getCommitted() / 1048576.0);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java com.github.anastaciocintra.tools.LoadGenerator [options]");
+        System.out.println("  --terminals N        simulated terminals (default 8)");
+        System.out.println("  --printers N         local stub printers (default 2)");
+        System.out.println("  --rate R             receipts per second, all terminals (default 50)");
+        System.out.println("  --duration S         test duration in seconds (default 10)");
+        System.out.println("  --dialect D          escpos or starprnt (default escpos)");
+        System.out.println("  --items N            items per receipt (default 15)");
+        System.out.println("  --printer-bps N      stub printer speed and pacing rate in bytes/s, 0 unlimited (default 0)");
+        System.out.println("  --timeout MS         delivery timeout of one receipt (default 30000)");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--help") || option.equals("-h")) {
+                usage();
+                return;
+            }
+            if (i + 1 == args.length) {
+                fail("missing value of " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--terminals":
+                    generator.terminals = positiveInt(option, value);
+                    break;
+                case "--printers":
+                    generator.printers = positiveInt(option, value);
+                    break;
+                case "--rate":
+                    generator.rate = Double.parseDouble(value);
+                    if (!(generator.rate > 0) || Double.isInfinite(generator.rate)) {
+                        fail(option + " must be a positive number");
+                    }
+                    break;
+                case "--duration":
+                    generator.durationSeconds = positiveInt(option, value);
+                    break;
+                case "--dialect":
+                    generator.dialect = value;
+                    break;
+                case "--items":
+                    generator.items = Integer.parseInt(value);
+                    break;
+                case "--printer-bps":
+                    generator.printerBytesPerSecond = Long.parseLong(value);
+                    break;
+                case "--timeout":
+                    generator.timeoutMillis = Long.parseLong(value);
+                    break;
+                default:
+                    fail("unknown option " + option);
+            }
+        }
+        generator.run();
+    }
+
+    private static int positiveInt(String option, String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            fail(option + " must be a positive number");
+        }
+        return number;
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        usage();
+        System.exit(1);
+    }
+
+}